@@ -5,17 +5,22 @@ This product includes software developed at Datadog (https://www.datadoghq.com/)
 
 package com.datadoghq.connect.logs;
 
+import com.datadoghq.connect.logs.sink.DatadogLogsApiWriter;
 import com.datadoghq.connect.logs.sink.DatadogLogsSinkConnectorConfig;
 import com.datadoghq.connect.logs.sink.DatadogLogsSinkTask;
 import com.datadoghq.connect.logs.util.Project;
 
 import org.apache.kafka.common.config.Config;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.config.ConfigValue;
 import org.apache.kafka.connect.connector.Task;
 import org.apache.kafka.connect.sink.SinkConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -65,6 +70,45 @@ public class DatadogLogsSinkConnector extends SinkConnector {
     @Override
     public Config validate(Map<String, String> connectorConfigs) {
         log.info("Validating Datadog Logs Sink Connector config.");
-        return super.validate(connectorConfigs);
+        Config config = super.validate(connectorConfigs);
+        for (ConfigValue value : config.configValues()) {
+            if (!value.errorMessages().isEmpty()) {
+                return config;
+            }
+        }
+
+        DatadogLogsSinkConnectorConfig connectorConfig;
+        try {
+            connectorConfig = new DatadogLogsSinkConnectorConfig(connectorConfigs);
+        } catch (ConfigException e) {
+            return config;
+        }
+
+        if (connectorConfig.connectionValidate) {
+            validateConnection(connectorConfig, config);
+        }
+        return config;
+    }
+
+    private void validateConnection(DatadogLogsSinkConnectorConfig connectorConfig, Config config) {
+        try {
+            int status = new DatadogLogsApiWriter(connectorConfig).checkConnection();
+            if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN) {
+                addErrorMessage(config, DatadogLogsSinkConnectorConfig.DD_API_KEY,
+                        "The API key was rejected by the Datadog Logs API with HTTP " + status + ".");
+            }
+        } catch (IOException e) {
+            log.warn("Unable to reach the Datadog Logs API during config validation", e);
+            addErrorMessage(config, DatadogLogsSinkConnectorConfig.DD_URL,
+                    "Unable to reach the Datadog Logs API: " + e);
+        }
+    }
+
+    private void addErrorMessage(Config config, String name, String message) {
+        for (ConfigValue value : config.configValues()) {
+            if (value.name().equals(name)) {
+                value.addErrorMessage(message);
+            }
+        }
     }
 }
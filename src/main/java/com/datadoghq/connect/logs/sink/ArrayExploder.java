@@ -0,0 +1,100 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Splits records whose value is an array, or whose value has a top-level array field, into one log entry per element.
+ * Every entry carries the metadata of the record it comes from.
+ */
+final class ArrayExploder {
+    private final boolean arrays;
+    private final String field;
+
+    ArrayExploder(boolean arrays, String field) {
+        this.arrays = arrays;
+        this.field = field;
+    }
+
+    /**
+     * @return an exploder for the config, or {@code null} when records are always sent as one entry.
+     */
+    static ArrayExploder of(DatadogLogsSinkConnectorConfig config) {
+        if (!config.explodeArrays && config.explodeField == null) {
+            return null;
+        }
+        return new ArrayExploder(config.explodeArrays, config.explodeField);
+    }
+
+    /**
+     * @return the elements the value of the record is split into, or {@code null} to send it as one entry.
+     */
+    Collection<?> elements(SinkRecord record) {
+        Object value = record.value();
+        if (arrays && value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        if (field != null) {
+            Object fieldValue = fieldValue(value);
+            if (fieldValue instanceof Collection) {
+                return (Collection<?>) fieldValue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the schema of the elements returned by {@link #elements}, or {@code null} if the record has no value
+     * schema.
+     */
+    Schema elementSchema(SinkRecord record) {
+        Schema schema = record.valueSchema();
+        if (schema == null) {
+            return null;
+        }
+        if (arrays && schema.type() == Schema.Type.ARRAY) {
+            return schema.valueSchema();
+        }
+        if (field != null && schema.type() == Schema.Type.STRUCT) {
+            Field schemaField = schema.field(field);
+            return schemaField != null && schemaField.schema().type() == Schema.Type.ARRAY
+                    ? schemaField.schema().valueSchema()
+                    : null;
+        }
+        if (field != null && schema.type() == Schema.Type.MAP && schema.valueSchema().type() == Schema.Type.ARRAY) {
+            return schema.valueSchema().valueSchema();
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of entries the record counts for in a batch, at least one so that records without elements
+     * still fill batches.
+     */
+    int entryCount(SinkRecord record) {
+        Collection<?> elements = record.value() != null ? elements(record) : null;
+        return elements != null ? Math.max(elements.size(), 1) : 1;
+    }
+
+    private Object fieldValue(Object value) {
+        if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            Field schemaField = struct.schema().field(field);
+            return schemaField != null ? struct.get(schemaField) : null;
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).get(field);
+        }
+        return null;
+    }
+}
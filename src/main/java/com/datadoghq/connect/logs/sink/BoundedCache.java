@@ -0,0 +1,84 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Bounded cache that the workers of a {@link ParallelEncoder} share without locking on hits.
+ * <p>
+ * Entries are evicted in CLOCK order, an approximation of least recently used: the oldest entry goes first unless it
+ * was read since it was last passed over, in which case it is given a second chance. Only additions take a lock.
+ */
+final class BoundedCache<K, V> {
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Slot<V>> slots = new ConcurrentHashMap<>();
+    // Keys in the order they are next considered for eviction
+    private final Queue<K> clock = new ConcurrentLinkedQueue<>();
+
+    BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the value of a key, or {@code null} if it is not cached.
+     */
+    V get(K key) {
+        Slot<V> slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        // Only written when it changes, so that hits on the same entry do not contend on its cache line
+        if (!slot.used) {
+            slot.used = true;
+        }
+        return slot.value;
+    }
+
+    /**
+     * Caches the value of a key, evicting other entries when the cache is full.
+     *
+     * @return the cached value of the key, which is the given value unless another thread cached one first.
+     */
+    V put(K key, V value) {
+        if (maxSize <= 0) {
+            return value;
+        }
+        synchronized (this) {
+            Slot<V> cached = slots.putIfAbsent(key, new Slot<>(value));
+            if (cached != null) {
+                return cached.value;
+            }
+            clock.add(key);
+            while (slots.size() > maxSize) {
+                K eldest = clock.poll();
+                Slot<V> slot = slots.get(eldest);
+                if (slot.used) {
+                    slot.used = false;
+                    clock.add(eldest);
+                } else {
+                    slots.remove(eldest);
+                }
+            }
+            return value;
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    private static final class Slot<V> {
+        private final V value;
+        private volatile boolean used;
+
+        Slot(V value) {
+            this.value = value;
+        }
+    }
+}
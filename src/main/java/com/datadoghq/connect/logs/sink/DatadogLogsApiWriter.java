@@ -7,10 +7,8 @@ package com.datadoghq.connect.logs.sink;
 
 import com.datadoghq.connect.logs.util.Project;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.GsonBuilder;
+import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.header.Header;
 import org.apache.kafka.connect.json.JsonConverter;
 import org.apache.kafka.connect.sink.SinkRecord;
@@ -22,18 +20,24 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Supplier;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.zip.GZIPOutputStream;
 
 import static java.util.stream.Collectors.toMap;
@@ -41,20 +45,143 @@ import static java.util.stream.StreamSupport.stream;
 
 public class DatadogLogsApiWriter {
     private static final Logger log = LoggerFactory.getLogger(DatadogLogsApiWriter.class);
+    private static final int CHECK_TIMEOUT_MS = 10000;
+    private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_ERROR_TEXT_LENGTH = 1024;
+    private static final byte[] EMPTY_BATCH = "[]".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_FIELD = "{\"message\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PUBLISHED_DATE_FIELD = ",\"published_date\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KAFKA_HEADERS_FIELD = ",\"kafkaheaders\":".getBytes(StandardCharsets.UTF_8);
+    // Key of the batches of records of all topics when they are coalesced
+    private static final String ALL_TOPICS = "*";
     private final DatadogLogsSinkConnectorConfig config;
-    private final Map<String, List<SinkRecord>> batches;
+    private final Map<String, PendingBatch> batches;
+    private final Map<String, PendingBatch> priorityBatches;
+    private final PriorityClassifier priorityClassifier;
+    private final ArrayExploder exploder;
     private final JsonConverter jsonConverter;
+    private final SchemaEncoderCache schemaEncoders;
+    private final ParallelEncoder parallelEncoder;
+    private final FieldFilter fieldFilter;
+    private final RetryPayloadCache retryPayloads;
+    private final BiConsumer<SinkRecord, Exception> rejectedRecordHandler;
+    private final SharedSenderRuntime runtime;
+    private final DeliveryLagTracker deliveryLag;
+    private final DeliveredOffsets deliveredOffsets;
+    private final EgressQuota quota;
+    private final LogMetricAggregator aggregator;
+    private final RequestExecutor requests;
+    private final List<InFlightBatch> inFlight;
+    private final Gson gson;
+    private final JsonBuffer buffer;
+    // The size of the payload last encoded by formatBatch, including what was drained from the buffer
+    private long formattedBytes;
+    private final DirectSlabPool slabs;
+    private final JsonBuffer entryBuffer;
+    private final byte[] scratch;
+    private final byte[] sourceField;
+    private final byte[] trailingFields;
+    private final RecordTags tags;
+    private final List<DestinationRoute> routes;
+    private final List<DatadogLogsApiWriter> routeWriters;
 
     public DatadogLogsApiWriter(DatadogLogsSinkConnectorConfig config) {
+        this(config, new RetryPayloadCache(0), DatadogLogsApiWriter::failOnRejectedRecord);
+    }
+
+    DatadogLogsApiWriter(DatadogLogsSinkConnectorConfig config, RetryPayloadCache retryPayloads,
+                         BiConsumer<SinkRecord, Exception> rejectedRecordHandler) {
+        this(config, retryPayloads, new DirectSlabPool(config.offHeapMaxBytes), rejectedRecordHandler, null, null, null,
+                null, null, null);
+    }
+
+    /**
+     * @param slabs                 the direct buffers batches are encoded into when off-heap encoding is enabled,
+     *                              or {@code null} if it is not.
+     * @param rejectedRecordHandler called with every record the API rejects as invalid; it may throw to fail the
+     *                              write.
+     * @param runtime               the sending resources shared with the other tasks of the connector, or
+     *                              {@code null} to compress on the default pool without an in-flight limit.
+     * @param deliveryLag           tracks the delivery lag of acknowledged records, or {@code null}.
+     * @param deliveredOffsets      tracks the offsets of acknowledged records, or {@code null}.
+     * @param quota                 is charged with the payload of every request sent, or {@code null}.
+     * @param aggregator            aggregates the records of some topics into metrics before they are routed, or
+     *                              {@code null}.
+     * @param requests              sends requests concurrently with the encoding of the next batches, or
+     *                              {@code null} to send them one at a time.
+     */
+    DatadogLogsApiWriter(DatadogLogsSinkConnectorConfig config, RetryPayloadCache retryPayloads, DirectSlabPool slabs,
+                         BiConsumer<SinkRecord, Exception> rejectedRecordHandler, SharedSenderRuntime runtime,
+                         DeliveryLagTracker deliveryLag, DeliveredOffsets deliveredOffsets, EgressQuota quota,
+                         LogMetricAggregator aggregator, RequestExecutor requests) {
         this.config = config;
         this.batches = new HashMap<>();
+        this.priorityBatches = new HashMap<>();
+        this.priorityClassifier = PriorityClassifier.of(config);
+        this.exploder = ArrayExploder.of(config);
         this.jsonConverter = new JsonConverter();
+        this.fieldFilter = FieldFilter.of(config);
+        this.schemaEncoders = new SchemaEncoderCache(config.schemaCacheSize, fieldFilter);
+        this.parallelEncoder = ParallelEncoder.of(config);
+        this.retryPayloads = retryPayloads;
+        this.rejectedRecordHandler = rejectedRecordHandler;
+        this.runtime = runtime;
+        this.deliveryLag = deliveryLag;
+        this.deliveredOffsets = deliveredOffsets;
+        this.quota = quota;
+        this.aggregator = aggregator;
+        this.requests = requests;
+        this.inFlight = new ArrayList<>();
+        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this.buffer = new JsonBuffer();
+        if (config.offHeapEnabled) {
+            this.slabs = slabs;
+            this.entryBuffer = new JsonBuffer();
+            this.scratch = new byte[STREAMING_CHUNK_SIZE];
+        } else {
+            this.slabs = null;
+            this.entryBuffer = null;
+            this.scratch = null;
+        }
 
         Map<String, String> jsonConverterConfig = new HashMap<>();
         jsonConverterConfig.put("schemas.enable", "false");
         jsonConverterConfig.put("decimal.format", "NUMERIC");
 
         jsonConverter.configure(jsonConverterConfig, false);
+
+        // Metadata that is identical for every record is encoded once
+        JsonBuffer fields = new JsonBuffer(64);
+        fields.writeAscii(",\"ddsource\":");
+        fields.writeString(config.ddSource);
+        this.sourceField = fields.toByteArray();
+
+        fields.reset();
+        if (config.ddHostname != null) {
+            fields.writeAscii(",\"hostname\":");
+            fields.writeString(config.ddHostname);
+        }
+        if (config.ddService != null) {
+            fields.writeAscii(",\"service\":");
+            fields.writeString(config.ddService);
+        }
+        fields.writeByte('}');
+        this.trailingFields = fields.toByteArray();
+        this.tags = RecordTags.of(config);
+
+        // Every destination batches, connects and retries on its own
+        this.routes = config.getDestinationRoutes();
+        this.routeWriters = new ArrayList<>(routes.size());
+        for (DestinationRoute route : routes) {
+            routeWriters.add(new DatadogLogsApiWriter(route.getConfig(), retryPayloads.forDestination(route.getName()),
+                    slabs != null ? slabs.forDestination(route.getName(), route.getConfig().offHeapMaxBytes) : null,
+                    rejectedRecordHandler, runtime, deliveryLag, deliveredOffsets, quota, null, requests));
+        }
+    }
+
+    static void failOnRejectedRecord(SinkRecord record, Exception error) {
+        throw new RecordRejectedException("Datadog Logs API rejected record " + record.topic() + "-"
+                + record.kafkaPartition() + "@" + record.kafkaOffset(), error);
     }
 
     /**
@@ -64,114 +191,839 @@ public class DatadogLogsApiWriter {
      * @throws IOException may be thrown if the connection to the API fails.
      */
     public void write(Collection<SinkRecord> records) throws IOException {
+        if (aggregator != null) {
+            records = aggregate(records);
+        }
+        if (routes.isEmpty()) {
+            writeBatches(records);
+            return;
+        }
+
+        List<List<SinkRecord>> routed = new ArrayList<>(routes.size());
+        for (int i = 0; i < routes.size(); i++) {
+            routed.add(new ArrayList<>());
+        }
+        List<SinkRecord> unrouted = new ArrayList<>();
         for (SinkRecord record : records) {
-            if (!batches.containsKey(record.topic())) {
-                batches.put(record.topic(), new ArrayList<>(Collections.singletonList(record)));
+            route(record, routed, unrouted);
+        }
+
+        // A destination that fails does not hold back the others, the first failure is thrown once all were written
+        IOException failure = null;
+        for (int i = 0; i <= routes.size(); i++) {
+            List<SinkRecord> destinationRecords = i < routes.size() ? routed.get(i) : unrouted;
+            if (destinationRecords.isEmpty()) {
+                continue;
+            }
+            try {
+                if (i < routes.size()) {
+                    routeWriters.get(i).write(destinationRecords);
+                } else {
+                    writeBatches(destinationRecords);
+                }
+            } catch (IOException e) {
+                log.warn("Write of {} records to destination {} failed", destinationRecords.size(),
+                        i < routes.size() ? routes.get(i) : "default", e);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sends the metrics of the last window if it has ended, then counts the records of aggregated topics in the
+     * current one.
+     *
+     * @return the records that are sent as logs, which is the given collection itself when all of them are.
+     */
+    private Collection<SinkRecord> aggregate(Collection<SinkRecord> records) {
+        sendMetrics(false);
+
+        List<SinkRecord> forwarded = new ArrayList<>(records.size());
+        List<SinkRecord> aggregated = new ArrayList<>();
+        for (SinkRecord record : records) {
+            if (aggregator.covers(record.topic()) && !aggregator.add(record)) {
+                aggregated.add(record);
             } else {
-                batches.get(record.topic()).add(record);
+                forwarded.add(record);
+            }
+        }
+        if (aggregated.isEmpty()) {
+            return records;
+        }
+        // Records only sent as metrics are done with once they are counted, but they have no delivery lag
+        if (deliveredOffsets != null) {
+            deliveredOffsets.delivered(aggregated);
+        }
+        return forwarded;
+    }
+
+    /**
+     * Sends the metrics of the current window without waiting for it to end, along with those that could not be sent
+     * before.
+     */
+    void flushMetrics() {
+        if (aggregator != null) {
+            sendMetrics(true);
+        }
+    }
+
+    /**
+     * Sends the metrics of windows that could not be sent before, then those of the current one if it has ended or
+     * is flushed. The payloads that fail are kept by the aggregator for the next attempt.
+     */
+    private void sendMetrics(boolean flush) {
+        List<byte[]> payloads = new ArrayList<>();
+        for (byte[] unsent = aggregator.takeUnsent(); unsent != null; unsent = aggregator.takeUnsent()) {
+            payloads.add(unsent);
+        }
+        byte[] closed = flush ? aggregator.flush() : aggregator.drain();
+        if (closed != null) {
+            payloads.add(closed);
+        }
+
+        for (int i = 0; i < payloads.size(); i++) {
+            byte[] content = payloads.get(i);
+            try {
+                sendRequest(null, 0, 0, compress(content), content, config.getMetricsURL());
+            } catch (IOException e) {
+                // Failing the write would count its records again once they are redelivered
+                log.warn("Keeping {} payloads of aggregated metrics that could not be sent for the next write",
+                        payloads.size() - i, e);
+                for (int j = i; j < payloads.size(); j++) {
+                    aggregator.requeue(payloads.get(j));
+                }
+                return;
+            }
+        }
+    }
+
+    private void route(SinkRecord record, List<List<SinkRecord>> routed, List<SinkRecord> unrouted) {
+        for (int i = 0; i < routes.size(); i++) {
+            if (routes.get(i).matches(record)) {
+                routed.get(i).add(record);
+                return;
+            }
+        }
+        unrouted.add(record);
+    }
+
+    private void writeBatches(Collection<SinkRecord> records) throws IOException {
+        try {
+            for (SinkRecord record : records) {
+                // Every entry is tagged with its topic, so batches only need to be split by topic for accounting
+                String key = config.coalesceTopics ? ALL_TOPICS : record.topic();
+                if (priorityClassifier != null && priorityClassifier.isPriority(record)) {
+                    if (addToBatch(priorityBatches, key, record) >= config.priorityBatchLength) {
+                        sendLane(priorityBatches, key);
+                    }
+                } else if (addToBatch(batches, key, record) >= config.ddMaxBatchLength) {
+                    sendLane(batches, key);
+                }
+            }
+
+            // Flush remaining records
+            flushBatches(priorityBatches);
+            flushBatches(batches);
+        } catch (IOException | RuntimeException e) {
+            // The records of the pending batches are put again on the retry, their slabs go back to the pool now
+            discardBatches(priorityBatches);
+            discardBatches(batches);
+            // Requests in flight still complete, so that their payloads are kept for the retry
+            try {
+                awaitRequests();
+            } catch (IOException | RuntimeException other) {
+                e.addSuppressed(other);
+            }
+            throw e;
+        }
+        awaitRequests();
+    }
+
+    /**
+     * Waits for the requests in flight in the order they were sent, and handles their outcome as if they were sent
+     * one at a time: acknowledging their records, splitting rejected batches and keeping the payloads of failed ones
+     * for the retry.
+     *
+     * @throws IOException the first failure of a request.
+     */
+    private void awaitRequests() throws IOException {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+
+        List<InFlightBatch> requested = new ArrayList<>(inFlight);
+        inFlight.clear();
+        IOException failure = null;
+        for (InFlightBatch batch : requested) {
+            try {
+                try {
+                    RequestExecutor.await(batch.request);
+                    acknowledged(batch.records);
+                } catch (PayloadRejectedException e) {
+                    log.warn("Datadog Logs API rejected a batch of {} records from topic {} with HTTP {}; " +
+                            "splitting it to isolate the rejected records", batch.records.size(), batch.topic, e.getStatus());
+                    bisect(batch.topic, batch.records, e);
+                } catch (IOException e) {
+                    if (batch.key != null) {
+                        retryPayloads.put(batch.key, batch.compressedPayload);
+                    }
+                    throw e;
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the number of entries the batch of the record counts for.
+     */
+    private int addToBatch(Map<String, PendingBatch> lane, String key, SinkRecord record) throws IOException {
+        PendingBatch batch = lane.get(key);
+        if (batch == null) {
+            batch = newBatch();
+            lane.put(key, batch);
+        }
+
+        if (batch.encoded != null && record.value() != null) {
+            int entries = encodeEntries(record);
+            if (batch.encoded.entries() > 0 && !fitsPayload(batch.encoded, entries)) {
+                // The record starts the next request
+                sendLane(lane, key);
+                batch = newBatch();
+                lane.put(key, batch);
             }
-            if (batches.get(record.topic()).size() >= config.ddMaxBatchLength) {
-                sendBatch(record.topic());
-                batches.remove(record.topic());
+
+            if (!fitsPayload(batch.encoded, entries)) {
+                log.debug("Record {}-{}@{} does not fit in one request; encoding its batch on the heap to split it",
+                        record.topic(), record.kafkaPartition(), record.kafkaOffset());
+                batch.encoded.release();
+                batch.encoded = null;
+            } else if (!batch.encoded.append(entryBuffer, entries)) {
+                // The off-heap budget is used up, sending the pending batches releases it
+                flushBatches(priorityBatches);
+                flushBatches(batches);
+                batch = newBatch();
+                lane.put(key, batch);
+                if (!batch.encoded.append(entryBuffer, entries)) {
+                    log.debug("Record {}-{}@{} is larger than the off-heap budget; encoding its batch on the heap",
+                            record.topic(), record.kafkaPartition(), record.kafkaOffset());
+                    batch.encoded.release();
+                    batch.encoded = null;
+                }
             }
         }
+        batch.records.add(record);
+        batch.entries += exploder != null ? exploder.entryCount(record) : 1;
+        return batch.entries;
+    }
+
+    private void sendLane(Map<String, PendingBatch> lane, String key) throws IOException {
+        if (lane == batches) {
+            // Priority records never wait behind a bulk request
+            flushBatches(priorityBatches);
+        }
+        sendBatch(key, lane.remove(key), lane == priorityBatches);
+    }
+
+    private PendingBatch newBatch() {
+        PendingBatch batch = new PendingBatch();
+        if (slabs != null) {
+            batch.encoded = new OffHeapBatch(slabs);
+        }
+        return batch;
+    }
+
+    /**
+     * Encodes the entries of a record into {@link #entryBuffer}.
+     *
+     * @return the number of entries encoded.
+     */
+    private int encodeEntries(SinkRecord record) {
+        entryBuffer.reset();
+        if (exploder == null) {
+            formatEntry(record, record.valueSchema(), record.value(), entryBuffer);
+            return 1;
+        }
 
-        // Flush remaining records
-        flushBatches();
+        EntryCursor cursor = new EntryCursor(Collections.singletonList(record), exploder);
+        int entries = 0;
+        while (cursor.next()) {
+            if (entries > 0) {
+                entryBuffer.writeByte(',');
+            }
+            formatEntry(record, cursor.schema(), cursor.message(), entryBuffer);
+            entries++;
+        }
+        return entries;
     }
 
-    private void flushBatches() throws IOException {
+    /**
+     * @return whether the entries in {@link #entryBuffer} can be added to the request of an off-heap batch.
+     */
+    private boolean fitsPayload(OffHeapBatch encoded, int entries) {
+        int separator = encoded.entries() > 0 && entries > 0 ? 1 : 0;
+        return encoded.entries() + entries <= config.ddMaxBatchLength
+                && encoded.size() + separator + entryBuffer.size() <= config.maxPayloadBytes;
+    }
+
+    private void flushBatches(Map<String, PendingBatch> batches) throws IOException {
         // send any outstanding batches
-        for (Map.Entry<String, List<SinkRecord>> entry : batches.entrySet()) {
-            sendBatch(entry.getKey());
+        Iterator<Map.Entry<String, PendingBatch>> entries = batches.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, PendingBatch> entry = entries.next();
+            entries.remove();
+            sendBatch(entry.getKey(), entry.getValue(), batches == priorityBatches);
         }
+    }
 
+    private void discardBatches(Map<String, PendingBatch> batches) {
+        for (PendingBatch batch : batches.values()) {
+            if (batch.encoded != null) {
+                batch.encoded.release();
+            }
+        }
         batches.clear();
     }
 
-    private void sendBatch(String topic) throws IOException {
-        JsonArray content = formatBatch(topic);
-        if (content.isEmpty()) {
-            log.debug("Nothing to send; Skipping the HTTP request.");
+    private void sendBatch(String topic, PendingBatch batch, boolean priority) throws IOException {
+        try {
+            sendBatch(topic, batch.records, batch.encoded, priority);
+        } finally {
+            if (batch.encoded != null) {
+                batch.encoded.release();
+            }
+        }
+    }
+
+    /**
+     * @param encoded  the entries of the records encoded off-heap, or {@code null} to encode them now.
+     * @param priority whether the batch is of the priority lane, whose requests in flight have their own limit.
+     */
+    private void sendBatch(String topic, List<SinkRecord> sinkRecords, OffHeapBatch encoded, boolean priority)
+            throws IOException {
+        try {
+            if (config.streamingRequests) {
+                streamBatch(topic, sinkRecords, encoded);
+            } else {
+                sendCachedBatch(topic, sinkRecords, encoded, priority);
+            }
+        } catch (PayloadRejectedException e) {
+            log.warn("Datadog Logs API rejected a batch of {} records from topic {} with HTTP {}; " +
+                    "splitting it to isolate the rejected records", sinkRecords.size(), topic, e.getStatus());
+            bisect(topic, sinkRecords, e);
+        }
+    }
+
+    /**
+     * Sends a batch, reusing the compressed payload of a previous failed attempt for the same records if there is
+     * one, and keeping it for the next attempt if this one fails with a retriable error.
+     */
+    private void sendCachedBatch(String topic, List<SinkRecord> sinkRecords, OffHeapBatch encoded, boolean priority)
+            throws IOException {
+        RetryPayloadCache.BatchKey key = null;
+        byte[] compressedPayload = null;
+        if (retryPayloads.isEnabled()) {
+            key = RetryPayloadCache.BatchKey.of(sinkRecords);
+            compressedPayload = retryPayloads.take(key);
+            if (compressedPayload != null) {
+                log.debug("Resending cached payload of previously failed batch {}", key);
+            }
+        }
+
+        byte[] content = null;
+        int logCount;
+        if (compressedPayload != null) {
+            logCount = entryCount(sinkRecords);
+        } else if (encoded != null) {
+            logCount = encoded.entries();
+            if (logCount == 0) {
+                log.debug("Nothing to send; Skipping the HTTP request.");
+                // Records without entries are delivered as they are
+                acknowledged(sinkRecords);
+                return;
+            }
+            compressedPayload = compress(encoded);
+        } else {
+            EntryCursor cursor = new EntryCursor(sinkRecords, exploder);
+            logCount = formatBatch(topic, cursor, null);
+            if (logCount == 0) {
+                log.debug("Nothing to send; Skipping the HTTP request.");
+                // Records without entries are delivered as they are
+                acknowledged(sinkRecords);
+                return;
+            }
+            content = buffer.toByteArray();
+            if (cursor.hasNext()) {
+                // Only payloads of batches that fit in one request are kept for retries
+                sendEntries(topic, cursor, content, logCount);
+                return;
+            }
+            compressedPayload = compress(content);
+        }
+
+        if (requests != null) {
+            // The batch is sent in a single request, which is awaited once the batches of the write are sent
+            URL url = config.getURL();
+            byte[] payload = compressedPayload;
+            byte[] uncompressed = content;
+            int logs = logCount;
+            inFlight.add(new InFlightBatch(topic, sinkRecords, key, compressedPayload, requests.submit(
+                    () -> sendRequest(topic, sinkRecords.size(), logs, payload, uncompressed, url), priority)));
             return;
         }
 
-        URL url = config.getURL();
+        try {
+            sendRequest(topic, sinkRecords.size(), logCount, compressedPayload, content, config.getURL());
+            acknowledged(sinkRecords);
+        } catch (PayloadRejectedException e) {
+            throw e;
+        } catch (IOException e) {
+            if (key != null) {
+                retryPayloads.put(key, compressedPayload);
+            }
+            throw e;
+        }
+    }
 
-        sendRequest(content, url);
+    /**
+     * Splits a batch sent in one request that was rejected, and acknowledges the records that were not rejected.
+     */
+    private void bisect(String topic, List<SinkRecord> sinkRecords, PayloadRejectedException rejection) throws IOException {
+        Delivery delivery = new Delivery(sinkRecords);
+        bisect(topic, delivery, entries(sinkRecords, 0, Integer.MAX_VALUE), rejection);
+        acknowledged(delivery, sinkRecords.size());
     }
 
-    private JsonArray formatBatch(String topic) {
-        List<SinkRecord> sinkRecords = batches.get(topic);
-        JsonArray batchRecords = new JsonArray();
+    /**
+     * Sends the two halves of the entries of a rejected request separately, recursing into the halves that are
+     * rejected again until the rejected entries are isolated and their records handed to the rejected record handler.
+     * The records whose entries were all sent are acknowledged as the halves succeed, except for the entries after
+     * the last half, which the caller acknowledges.
+     */
+    private void bisect(String topic, Delivery delivery, List<EntryCursor.Entry> entries,
+                        PayloadRejectedException rejection) throws IOException {
+        if (entries.size() == 1) {
+            SinkRecord record = entries.get(0).record;
+            // The entries of an exploded record can be rejected separately, the record is only handled once
+            if (delivery.rejected.add(record)) {
+                log.warn("Datadog Logs API rejected record {}-{}@{}: {}",
+                        record.topic(), record.kafkaPartition(), record.kafkaOffset(), rejection.getMessage());
+                rejectedRecordHandler.accept(record, rejection);
+            }
+            return;
+        }
 
-        for (SinkRecord record : sinkRecords) {
-            if (record == null) {
-                continue;
+        int middle = entries.size() / 2;
+        sendEntries(topic, delivery, entries.subList(0, middle));
+        acknowledged(delivery, entries.get(middle).recordIndex);
+        sendEntries(topic, delivery, entries.subList(middle, entries.size()));
+    }
+
+    /**
+     * Sends some of the entries of a rejected request in one request, splitting them again if it is rejected too.
+     */
+    private void sendEntries(String topic, Delivery delivery, List<EntryCursor.Entry> entries) throws IOException {
+        buffer.reset();
+        buffer.writeByte('[');
+        int recordCount = 0;
+        SinkRecord record = null;
+        for (EntryCursor.Entry entry : entries) {
+            if (record != entry.record) {
+                record = entry.record;
+                recordCount++;
+            }
+            if (buffer.size() > 1) {
+                buffer.writeByte(',');
             }
+            if (entry.content != null) {
+                buffer.writeBytes(entry.content);
+            } else {
+                formatEntry(entry.record, entry.schema, entry.message, buffer);
+            }
+        }
+        buffer.writeByte(']');
+        byte[] content = buffer.toByteArray();
 
-            if (record.value() == null) {
-                continue;
+        try {
+            sendRequest(topic, recordCount, entries.size(), compress(content), content, config.getURL());
+        } catch (PayloadRejectedException e) {
+            bisect(topic, delivery, entries, e);
+        }
+    }
+
+    /**
+     * @return the entries of records, from the given one on, in the order a new cursor over them walks them.
+     */
+    private List<EntryCursor.Entry> entries(List<SinkRecord> sinkRecords, int from, int count) {
+        EntryCursor cursor = new EntryCursor(sinkRecords, exploder);
+        List<EntryCursor.Entry> entries = new ArrayList<>();
+        for (int i = 0; i - from < count && cursor.next(); i++) {
+            if (i >= from) {
+                entries.add(cursor.entry());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Sends the remaining entries of a cursor in as many requests as the payload limits require. The records of each
+     * request are acknowledged as soon as it succeeds, so that a later failure does not send them again. A rejected
+     * request is split to isolate its rejected records, and the entries after it are sent on.
+     *
+     * @param content  the first request, already encoded from the start of the cursor, or {@code null}.
+     * @param logCount the number of entries of the first request when it is already encoded.
+     */
+    private void sendEntries(String topic, EntryCursor cursor, byte[] content, int logCount) throws IOException {
+        List<SinkRecord> records = cursor.records();
+        Delivery delivery = new Delivery(records);
+        while (content != null || cursor.hasNext()) {
+            int firstEntry = content != null ? cursor.consumed() - logCount : cursor.consumed();
+            PayloadRejectedException rejection = null;
+            try {
+                if (content == null && !config.streamingRequests) {
+                    logCount = formatBatch(topic, cursor, null);
+                    content = buffer.toByteArray();
+                }
+                if (content != null) {
+                    sendRequest(topic, records.size(), logCount, compress(content), content, config.getURL());
+                } else {
+                    streamRequest(topic, records, null, cursor);
+                }
+            } catch (PayloadRejectedException e) {
+                rejection = e;
+            }
+            content = null;
+
+            if (rejection != null) {
+                // Only the entries of the request are sent again, as the request before it may have ended within
+                // the record it started with
+                List<EntryCursor.Entry> entries = entries(records, firstEntry, cursor.consumed() - firstEntry);
+                log.warn("Datadog Logs API rejected a request of {} log entries from topic {} with HTTP {}; " +
+                        "splitting it to isolate the rejected records", entries.size(), topic, rejection.getStatus());
+                bisect(topic, delivery, entries, rejection);
             }
+            // The records before the one of the next entry of the cursor have all their entries sent
+            acknowledged(delivery, cursor.position());
+        }
+        // Records without entries
+        acknowledged(delivery, records.size());
+    }
 
-            JsonElement recordJSON = recordToJSON(record);
-            JsonObject message = populateMetadata(topic, recordJSON, record.timestamp(), () -> kafkaHeadersToJsonElement(record));
-            batchRecords.add(message);
+    /**
+     * Sends a batch with chunked transfer encoding. Records are encoded and compressed straight onto the connection,
+     * so only about one chunk of the payload is held in memory and the request is written while it is produced.
+     */
+    private void streamBatch(String topic, List<SinkRecord> sinkRecords, OffHeapBatch encoded) throws IOException {
+        EntryCursor cursor = encoded == null ? new EntryCursor(sinkRecords, exploder) : null;
+        if (encoded != null ? encoded.entries() == 0 : !cursor.hasNext()) {
+            log.debug("Nothing to send; Skipping the HTTP request.");
+            acknowledged(sinkRecords);
+            return;
         }
 
-        return batchRecords;
+        if (encoded != null) {
+            streamRequest(topic, sinkRecords, encoded, null);
+            acknowledged(sinkRecords);
+        } else {
+            // Entries that do not fit in the payload limits of one request go in the next one
+            sendEntries(topic, cursor, null, 0);
+        }
     }
 
-    private JsonElement kafkaHeadersToJsonElement(SinkRecord sinkRecord) {
-        Map<String, Object> headerMap = stream(sinkRecord.headers().spliterator(), false)
-                .collect(toMap(Header::key, Header::value));
+    private void streamRequest(String topic, List<SinkRecord> sinkRecords, OffHeapBatch encoded, EntryCursor cursor)
+            throws IOException {
+        JfrEvents.HttpRequestEvent event = JfrEvents.AVAILABLE ? new JfrEvents.HttpRequestEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        beginRequest();
+        long start = System.nanoTime();
+        long connected = start;
+        long written = start;
+        int status = 0;
+        try {
+            HttpURLConnection con = openConnection(config.getURL());
+            con.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+            con.connect();
+            connected = System.nanoTime();
 
-        Gson gson = new Gson();
+            log.trace("Streaming HTTP request to {}", con.getURL());
+            try (OutputStream output = new GZIPOutputStream(con.getOutputStream(), STREAMING_CHUNK_SIZE)) {
+                if (encoded != null) {
+                    encoded.writeTo(output, scratch);
+                    consumeQuota(encoded.size(), encoded.entries());
+                } else {
+                    int logCount = formatBatch(topic, cursor, output);
+                    consumeQuota(formattedBytes, logCount);
+                }
+            }
+            log.trace("HTTP request submitted");
+            written = System.nanoTime();
 
-        String jsonString = gson.toJson(headerMap);
+            status = readResponse(con, null);
+        } finally {
+            endRequest();
+            if (event != null && event.shouldCommit()) {
+                event.topic = topic;
+                event.recordCount = sinkRecords.size();
+                event.compressedBytes = -1;
+                event.streaming = true;
+                commit(event, status, start, connected, written);
+            }
+        }
+    }
 
-        return gson.fromJson(jsonString, JsonElement.class);
+    /**
+     * Acknowledges the records up to the given one that were not acknowledged yet, except for the rejected ones.
+     */
+    private void acknowledged(Delivery delivery, int end) {
+        if (end <= delivery.acknowledgedRecords) {
+            return;
+        }
+        List<SinkRecord> sinkRecords = delivery.records.subList(delivery.acknowledgedRecords, end);
+        delivery.acknowledgedRecords = end;
+        if (!delivery.rejected.isEmpty()) {
+            List<SinkRecord> accepted = new ArrayList<>(sinkRecords.size());
+            for (SinkRecord record : sinkRecords) {
+                if (!delivery.rejected.contains(record)) {
+                    accepted.add(record);
+                }
+            }
+            sinkRecords = accepted;
+        }
+        acknowledged(sinkRecords);
     }
 
-    private JsonElement recordToJSON(SinkRecord record) {
-        byte[] rawJSONPayload = jsonConverter.fromConnectData(record.topic(), record.valueSchema(), record.value());
-        String jsonPayload = new String(rawJSONPayload, StandardCharsets.UTF_8);
-        return new Gson().fromJson(jsonPayload, JsonElement.class);
+    private void acknowledged(List<SinkRecord> sinkRecords) {
+        if (deliveryLag != null) {
+            deliveryLag.acknowledged(sinkRecords, System.currentTimeMillis());
+        }
+        if (deliveredOffsets != null) {
+            deliveredOffsets.delivered(sinkRecords);
+        }
     }
 
-    private JsonObject populateMetadata(String topic, JsonElement message, Long timestamp, Supplier<JsonElement> kafkaHeaders) {
-        JsonObject content = new JsonObject();
-        String tags = "topic:" + topic;
-        content.add("message", message);
-        content.add("ddsource", new JsonPrimitive(config.ddSource));
-        if (config.addPublishedDate && timestamp != null) {
-            content.add("published_date", new JsonPrimitive(timestamp));
+    /**
+     * Encodes the next entries of records of a topic as a JSON array into {@link #buffer}, up to the payload limits
+     * of one request. The entries that do not fit are left to the cursor.
+     *
+     * @param sink when not {@code null}, the buffer is drained into it whenever it holds a chunk worth of data and
+     *             once the batch is complete.
+     * @return the number of log entries written.
+     */
+    private int formatBatch(String topic, EntryCursor cursor, OutputStream sink) throws IOException {
+        JfrEvents.EncodeEvent event = JfrEvents.AVAILABLE ? new JfrEvents.EncodeEvent() : null;
+        if (event != null) {
+            event.begin();
         }
 
-        if (config.parseRecordHeaders) {
-            content.add("kafkaheaders", kafkaHeaders.get());
+        long drainedBytes = 0;
+
+        buffer.reset();
+        buffer.writeByte('[');
+        int entries = parallelEncoder != null && sink == null ? formatInParallel(cursor) : -1;
+        if (entries < 0) {
+            // Streamed batches and batches too small to be split are encoded on the task thread
+            entries = 0;
+            while (entries < config.ddMaxBatchLength && cursor.next()) {
+                int mark = buffer.size();
+                if (entries > 0) {
+                    buffer.writeByte(',');
+                }
+                if (cursor.content() != null) {
+                    buffer.writeBytes(cursor.content());
+                } else {
+                    formatEntry(cursor.record(), cursor.schema(), cursor.message(), buffer);
+                }
+                if (entries > 0 && drainedBytes + buffer.size() + 1 > config.maxPayloadBytes) {
+                    // The payload is full, the entry starts the next one
+                    buffer.truncate(mark);
+                    cursor.pushBack();
+                    break;
+                }
+                entries++;
+
+                if (sink != null && buffer.size() >= STREAMING_CHUNK_SIZE) {
+                    drainedBytes += buffer.size();
+                    buffer.writeTo(sink);
+                    buffer.reset();
+                }
+            }
         }
+        buffer.writeByte(']');
+        formattedBytes = drainedBytes + buffer.size();
 
-        if (config.ddTags != null) {
-            tags += "," + config.ddTags;
+        if (event != null && event.shouldCommit()) {
+            event.topic = topic;
+            event.partitions = JfrEvents.partitionRanges(cursor.records());
+            event.recordCount = cursor.records().size();
+            event.logCount = entries;
+            event.rawBytes = drainedBytes + buffer.size();
+            event.commit();
         }
-        content.add("ddtags", new JsonPrimitive(tags));
 
-        if (config.ddHostname != null) {
-            content.add("hostname", new JsonPrimitive(config.ddHostname));
+        if (sink != null) {
+            buffer.writeTo(sink);
+            buffer.reset();
         }
 
-        if (config.ddService != null) {
-            content.add("service", new JsonPrimitive(config.ddService));
+        return entries;
+    }
+
+    /**
+     * Encodes the next entries of a cursor into {@link #buffer} on the pool of the {@link #parallelEncoder}, when
+     * there are enough of them to be split into chunks. The entries are then encoded up to the entry limit of a
+     * request, and those beyond the byte limit are pushed back to the cursor along with their encoded content, which
+     * the next request reuses.
+     *
+     * @return the number of entries written, or -1 if none were taken from the cursor.
+     */
+    private int formatInParallel(EntryCursor cursor) {
+        List<EntryCursor.Entry> pending = new ArrayList<>();
+        while (pending.size() < config.ddMaxBatchLength && cursor.next()) {
+            pending.add(cursor.entry());
+        }
+        if (!parallelEncoder.splits(pending.size())) {
+            cursor.pushBack(pending);
+            return -1;
+        }
+
+        ParallelEncoder.Segment[] segments = parallelEncoder.encode(pending, (entry, out) -> {
+            if (entry.content != null) {
+                out.writeBytes(entry.content);
+            } else {
+                formatEntry(entry.record, entry.schema, entry.message, out);
+            }
+        });
+        int entries = 0;
+        List<EntryCursor.Entry> leftover = null;
+        for (ParallelEncoder.Segment segment : segments) {
+            int start = 0;
+            for (int end : segment.ends) {
+                if (leftover == null && entries > 0 && buffer.size() + 1 + end - start + 1 > config.maxPayloadBytes) {
+                    // The payload is full, the remaining entries start the next one
+                    leftover = new ArrayList<>(pending.size() - entries);
+                }
+                if (leftover != null) {
+                    EntryCursor.Entry entry = pending.get(entries + leftover.size());
+                    leftover.add(entry.withContent(segment.content.toByteArray(start, end - start)));
+                } else {
+                    if (entries > 0) {
+                        buffer.writeByte(',');
+                    }
+                    buffer.writeBytes(segment.content, start, end - start);
+                    entries++;
+                }
+                start = end;
+            }
         }
+        if (leftover != null) {
+            cursor.pushBack(leftover);
+        }
+        return entries;
+    }
+
+    /**
+     * @param message the record value, or the element of it the entry is made of.
+     */
+    private void formatEntry(SinkRecord record, Schema schema, Object message, JsonBuffer out) {
+        out.writeBytes(MESSAGE_FIELD);
+        recordToJSON(record.topic(), schema, message, out);
+        populateMetadata(record, out);
+    }
 
-        return content;
+    private String kafkaHeadersToJson(SinkRecord sinkRecord) {
+        Map<String, Object> headerMap = stream(sinkRecord.headers().spliterator(), false)
+                .collect(toMap(Header::key, Header::value));
+
+        return gson.toJson(headerMap);
     }
 
-    private void sendRequest(JsonArray content, URL url) throws IOException {
-        String requestContent = content.toString();
-        byte[] compressedPayload = compress(requestContent);
+    private void recordToJSON(String topic, Schema schema, Object message, JsonBuffer out) {
+        if (config.bytesAsText && message instanceof byte[] && (schema == null || schema.type() == Schema.Type.BYTES)) {
+            bytesToJSON((byte[]) message, out);
+        } else if (schema != null) {
+            schemaEncoders.get(schema).encode(message, out);
+        } else if (!fieldFilter.isIdentity()) {
+            SchemaEncoder.encodeSchemaless(message, fieldFilter, "", out,
+                    value -> jsonConverter.fromConnectData(topic, null, value));
+        } else if (message instanceof String) {
+            // Plain text is the most common value, it is escaped straight into the payload
+            out.writeString((String) message);
+        } else {
+            out.writeJson(jsonConverter.fromConnectData(topic, null, message));
+        }
+    }
+
+    private void bytesToJSON(byte[] message, JsonBuffer out) {
+        if (fieldFilter.transformsStrings()) {
+            out.writeString(fieldFilter.transform(new String(message, StandardCharsets.UTF_8)));
+        } else {
+            out.writeUtf8String(message, 0, message.length);
+        }
+    }
+
+    private void populateMetadata(SinkRecord record, JsonBuffer out) {
+        out.writeBytes(sourceField);
+        if (config.addPublishedDate && record.timestamp() != null) {
+            out.writeBytes(PUBLISHED_DATE_FIELD);
+            out.writeLong(record.timestamp());
+        }
+
+        if (config.parseRecordHeaders) {
+            out.writeBytes(KAFKA_HEADERS_FIELD);
+            out.writeBytes(kafkaHeadersToJson(record).getBytes(StandardCharsets.UTF_8));
+        }
+
+        out.writeBytes(tags.field(record));
+        out.writeBytes(trailingFields);
+    }
+
+    /**
+     * Submits an empty batch to the Datadog Logs API. This resolves the endpoint, validates the API key and leaves
+     * an established connection in the keep-alive cache for the next request to reuse.
+     *
+     * @return the HTTP status code returned by the API.
+     * @throws IOException may be thrown if the API cannot be reached.
+     */
+    public int checkConnection() throws IOException {
+        byte[] compressedPayload = compress(EMPTY_BATCH);
+
+        HttpURLConnection con = openConnection(config.getURL());
+        con.setConnectTimeout(CHECK_TIMEOUT_MS);
+        con.setReadTimeout(CHECK_TIMEOUT_MS);
+
+        DataOutputStream output = new DataOutputStream(con.getOutputStream());
+        output.write(compressedPayload);
+        output.close();
+
+        // Drain the response so that the connection can be reused
+        int status = con.getResponseCode();
+        InputStream stream = Response.Status.Family.familyOf(status) == Response.Status.Family.SUCCESSFUL
+                ? con.getInputStream()
+                : con.getErrorStream();
+        String body = stream != null ? getOutput(stream) : "";
+        log.debug("Connection check to {} returned HTTP {} {}", con.getURL(), status, body);
 
+        return status;
+    }
+
+    private HttpURLConnection openConnection(URL url) throws IOException {
         HttpURLConnection con;
         if (config.proxyURL != null) {
             Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(config.proxyURL, config.proxyPort));
@@ -182,28 +1034,128 @@ public class DatadogLogsApiWriter {
         con.setDoOutput(true);
         con.setRequestMethod("POST");
         setRequestProperties(con);
+        return con;
+    }
 
-        log.trace("Submitting HTTP request to {} with body {}", con.getURL(), requestContent);
-        DataOutputStream output = new DataOutputStream(con.getOutputStream());
-        output.write(compressedPayload);
-        output.close();
-        log.trace("HTTP request submitted");
+    /**
+     * Sends a payload, charging it to the egress quota unless it holds no logs.
+     *
+     * @param logCount the number of log entries in the payload.
+     * @param content  the uncompressed payload, or {@code null} when it is not retained.
+     */
+    private void sendRequest(String topic, int recordCount, int logCount, byte[] compressedPayload, byte[] content,
+                             URL url) throws IOException {
+        JfrEvents.HttpRequestEvent event = JfrEvents.AVAILABLE ? new JfrEvents.HttpRequestEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        consumeQuota(uncompressedSize(compressedPayload), logCount);
+        beginRequest();
+        long start = System.nanoTime();
+        long connected = start;
+        long written = start;
+        int status = 0;
+        try {
+            HttpURLConnection con = openConnection(url);
+            con.connect();
+            connected = System.nanoTime();
+
+            if (log.isTraceEnabled() && content != null) {
+                log.trace("Submitting HTTP request to {} with body {}", con.getURL(), new String(content, StandardCharsets.UTF_8));
+            }
+            DataOutputStream output = new DataOutputStream(con.getOutputStream());
+            output.write(compressedPayload);
+            output.close();
+            log.trace("HTTP request submitted");
+            written = System.nanoTime();
+
+            status = readResponse(con, content);
+        } finally {
+            endRequest();
+            if (event != null && event.shouldCommit()) {
+                event.topic = topic;
+                event.recordCount = recordCount;
+                event.compressedBytes = compressedPayload.length;
+                commit(event, status, start, connected, written);
+            }
+        }
+    }
+
+    private void beginRequest() throws IOException {
+        if (runtime != null) {
+            runtime.beginRequest();
+        }
+    }
+
+    private void endRequest() {
+        if (runtime != null) {
+            runtime.endRequest();
+        }
+    }
+
+    private void consumeQuota(long byteCount, int logCount) {
+        if (quota != null && logCount > 0) {
+            quota.consume(byteCount, logCount);
+        }
+    }
+
+    /**
+     * @return the size of the content of a gzip payload, which its trailer holds as payloads are single members
+     * smaller than 4GiB.
+     */
+    private static long uncompressedSize(byte[] compressedPayload) {
+        int end = compressedPayload.length;
+        return (compressedPayload[end - 4] & 0xffL)
+                | (compressedPayload[end - 3] & 0xffL) << 8
+                | (compressedPayload[end - 2] & 0xffL) << 16
+                | (compressedPayload[end - 1] & 0xffL) << 24;
+    }
+
+    /**
+     * @return the number of log entries of records.
+     */
+    private int entryCount(List<SinkRecord> sinkRecords) {
+        int entries = 0;
+        for (SinkRecord record : sinkRecords) {
+            if (record.value() != null) {
+                entries += exploder != null ? exploder.entryCount(record) : 1;
+            }
+        }
+        return entries;
+    }
 
-        // get response
+    private static void commit(JfrEvents.HttpRequestEvent event, int status, long start, long connected, long written) {
+        long end = System.nanoTime();
+        event.status = status;
+        event.connectDuration = connected - start;
+        event.writeDuration = Math.max(written - connected, 0);
+        event.responseDuration = written > start ? end - written : 0;
+        event.commit();
+    }
+
+    /**
+     * @return the HTTP status code of a successful response.
+     */
+    private int readResponse(HttpURLConnection con, byte[] content) throws IOException {
         int status = con.getResponseCode();
         if (Response.Status.Family.familyOf(status) != Response.Status.Family.SUCCESSFUL) {
             InputStream stream = con.getErrorStream();
             String error = "";
             if (stream != null) {
-                error = getOutput(stream);
+                error = abbreviate(getOutput(stream));
             }
             con.disconnect();
-            throw new IOException("HTTP Response code: " + status
+            String message = "HTTP Response code: " + status
                     + ", " + con.getResponseMessage() + ", " + error
-                    + ", Submitted payload: " + content);
+                    + ", Submitted payload: " + (content != null ? abbreviate(new String(content, StandardCharsets.UTF_8)) : "<not retained>");
+            if (PayloadRejectedException.isPayloadRejection(status)) {
+                throw new PayloadRejectedException(status, message);
+            }
+            throw new IOException(message);
         }
 
         log.trace("Received HTTP response {} {} with body {}", status, con.getResponseMessage(), getOutput(con.getInputStream()));
+        return status;
     }
 
     private void setRequestProperties(HttpURLConnection con) {
@@ -215,13 +1167,61 @@ public class DatadogLogsApiWriter {
         con.setRequestProperty("User-Agent", Project.getName() + "/" + Project.getVersion());
     }
 
-    private byte[] compress(String str) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream(str.length());
-        GZIPOutputStream gos = new GZIPOutputStream(os);
-        gos.write(str.getBytes());
-        os.close();
-        gos.close();
-        return os.toByteArray();
+    private byte[] compress(byte[] content) throws IOException {
+        JfrEvents.CompressEvent event = JfrEvents.AVAILABLE ? new JfrEvents.CompressEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        boolean parallel = config.parallelCompressionThreshold > 0 && content.length >= config.parallelCompressionThreshold;
+        byte[] compressed;
+        if (parallel) {
+            compressed = runtime != null
+                    ? ParallelGzip.compress(runtime.compressionExecutor(), content, content.length, ParallelGzip.DEFAULT_BLOCK_SIZE)
+                    : ParallelGzip.compress(content, content.length, ParallelGzip.DEFAULT_BLOCK_SIZE);
+        } else {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(content.length);
+            GZIPOutputStream gos = new GZIPOutputStream(os);
+            gos.write(content);
+            os.close();
+            gos.close();
+            compressed = os.toByteArray();
+        }
+
+        if (event != null && event.shouldCommit()) {
+            event.rawBytes = content.length;
+            event.compressedBytes = compressed.length;
+            event.parallel = parallel;
+            event.commit();
+        }
+        return compressed;
+    }
+
+    private byte[] compress(OffHeapBatch encoded) throws IOException {
+        JfrEvents.CompressEvent event = JfrEvents.AVAILABLE ? new JfrEvents.CompressEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream((int) Math.min(encoded.size() / 4 + 64, Integer.MAX_VALUE));
+        try (GZIPOutputStream gos = new GZIPOutputStream(os, STREAMING_CHUNK_SIZE)) {
+            encoded.writeTo(gos, scratch);
+        }
+        byte[] compressed = os.toByteArray();
+
+        if (event != null && event.shouldCommit()) {
+            event.rawBytes = encoded.size();
+            event.compressedBytes = compressed.length;
+            event.commit();
+        }
+        return compressed;
+    }
+
+    private static String abbreviate(String text) {
+        if (text.length() <= MAX_ERROR_TEXT_LENGTH) {
+            return text;
+        }
+        return text.substring(0, MAX_ERROR_TEXT_LENGTH) + "... (" + (text.length() - MAX_ERROR_TEXT_LENGTH) + " more characters)";
     }
 
     private String getOutput(InputStream input) throws IOException {
@@ -234,4 +1234,47 @@ public class DatadogLogsApiWriter {
 
         return errorOutput.toString(StandardCharsets.UTF_8.name());
     }
+
+    /**
+     * Records of a topic, or of all topics when they are coalesced, waiting to be sent, along with their entries when they are encoded off-heap.
+     */
+    private static final class PendingBatch {
+        private final List<SinkRecord> records = new ArrayList<>();
+        private int entries;
+        private OffHeapBatch encoded;
+    }
+
+    /**
+     * The progress of the acknowledgement of records sent in several requests.
+     */
+    private static final class Delivery {
+        private final List<SinkRecord> records;
+        // Records of which an entry was rejected, by identity as records do not define equality
+        private final Set<SinkRecord> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int acknowledgedRecords;
+
+        Delivery(List<SinkRecord> records) {
+            this.records = records;
+        }
+    }
+
+    /**
+     * A batch sent in one request that has not completed yet, with what its outcome is handled with.
+     */
+    private static final class InFlightBatch {
+        private final String topic;
+        private final List<SinkRecord> records;
+        private final RetryPayloadCache.BatchKey key;
+        private final byte[] compressedPayload;
+        private final Future<Void> request;
+
+        InFlightBatch(String topic, List<SinkRecord> records, RetryPayloadCache.BatchKey key, byte[] compressedPayload,
+                      Future<Void> request) {
+            this.topic = topic;
+            this.records = records;
+            this.key = key;
+            this.compressedPayload = compressedPayload;
+            this.request = request;
+        }
+    }
 }
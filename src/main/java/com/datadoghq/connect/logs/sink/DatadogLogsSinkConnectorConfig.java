@@ -15,14 +15,22 @@ import org.apache.kafka.common.config.types.Password;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
 
     public static final String DD_URL = "datadog.url";
     public static final String DD_SITE = "datadog.site";
     public static final String DD_TAGS = "datadog.tags";
+    public static final String DD_DYNAMIC_TAGS = "datadog.tags.dynamic";
+    public static final String DD_DYNAMIC_TAGS_CACHE_SIZE = "datadog.tags.dynamic.cache_size";
     public static final String DD_SERVICE = "datadog.service";
     public static final String DD_HOSTNAME = "datadog.hostname";
     public static final String DD_API_KEY = "datadog.api_key";
@@ -30,11 +38,60 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
     public static final String PROXY_PORT = "datadog.proxy.port";
     public static final String MAX_RETRIES = "datadog.retry.max";
     public static final String RETRY_BACKOFF_MS = "datadog.retry.backoff_ms";
+    public static final String RETRY_PAYLOAD_CACHE_BYTES = "datadog.retry.payload_cache_bytes";
+    public static final String RETRY_SKIP_DELIVERED = "datadog.retry.skip_delivered";
     private static final String DD_URL_FORMAT_FROM_SITE = "http-intake.logs.%s:443";
+    private static final String DD_METRICS_URL_FORMAT_FROM_SITE = "api.%s:443";
     private static final String DEFAULT_DD_SITE = "datadoghq.com";
     public static final String DEFAULT_DD_URL = String.format(DD_URL_FORMAT_FROM_SITE, DEFAULT_DD_SITE);
     public static final String ADD_PUBLISHED_DATE = "datadog.add_published_date";
     public static final String PARSE_RECORD_HEADERS = "datadog.parse_record_headers";
+    public static final String SCHEMA_CACHE_SIZE = "datadog.encoder.schema_cache_size";
+    public static final String PARALLEL_COMPRESSION_THRESHOLD = "datadog.compression.parallel_threshold_bytes";
+    public static final String PARALLEL_ENCODING = "datadog.encoder.parallel.enabled";
+    public static final String PARALLEL_ENCODING_CHUNK_SIZE = "datadog.encoder.parallel.chunk_size";
+    public static final String INCLUDE_FIELDS = "datadog.encoder.include_fields";
+    public static final String EXCLUDE_FIELDS = "datadog.encoder.exclude_fields";
+    public static final String MAX_STRING_LENGTH = "datadog.encoder.max_string_length";
+    public static final String MASK_PATTERN = "datadog.encoder.mask_pattern";
+    public static final String MASK_REPLACEMENT = "datadog.encoder.mask_replacement";
+    public static final String OFF_HEAP_ENABLED = "datadog.encoder.off_heap.enabled";
+    public static final String OFF_HEAP_MAX_BYTES = "datadog.encoder.off_heap.max_bytes";
+    public static final String EXPLODE_ARRAYS = "datadog.encoder.explode_arrays";
+    public static final String EXPLODE_FIELD = "datadog.encoder.explode_field";
+    public static final String BYTES_AS_TEXT = "datadog.encoder.bytes_as_text";
+    public static final String STREAMING_REQUESTS = "datadog.request.streaming";
+    public static final String MAX_PAYLOAD_BYTES = "datadog.request.max_payload_bytes";
+    public static final String COALESCE_TOPICS = "datadog.request.coalesce_topics";
+    public static final String REQUEST_CONCURRENCY = "datadog.request.concurrency";
+    public static final String REQUEST_VIRTUAL_THREADS = "datadog.request.virtual_threads";
+    public static final String CONNECTION_PREWARM = "datadog.connection.prewarm";
+    public static final String CONNECTION_VALIDATE = "datadog.connection.validate";
+    public static final String DELIVERY_LAG_METRICS = "datadog.metrics.delivery_lag.enabled";
+    public static final String SHARED_RUNTIME = "datadog.shared_runtime.enabled";
+    public static final String SHARED_RUNTIME_MAX_IN_FLIGHT = "datadog.shared_runtime.max_in_flight_requests";
+    public static final String QUOTA_BYTES_PER_SECOND = "datadog.quota.bytes_per_second";
+    public static final String QUOTA_LOGS_PER_SECOND = "datadog.quota.logs_per_second";
+    public static final String PRIORITY_FIELD = "datadog.priority.field";
+    public static final String PRIORITY_HEADER = "datadog.priority.header";
+    public static final String PRIORITY_VALUES = "datadog.priority.values";
+    public static final String PRIORITY_BATCH_SIZE = "datadog.priority.batch_size";
+    public static final String PRIORITY_REQUEST_CONCURRENCY = "datadog.priority.request_concurrency";
+    public static final String DESTINATIONS = "datadog.destinations";
+    public static final String AGGREGATION_TOPICS = "datadog.aggregation.topics";
+    public static final String AGGREGATION_METRIC_PREFIX = "datadog.aggregation.metric_prefix";
+    public static final String AGGREGATION_TAG_FIELDS = "datadog.aggregation.tag_fields";
+    public static final String AGGREGATION_VALUE_FIELDS = "datadog.aggregation.value_fields";
+    public static final String AGGREGATION_WINDOW_MS = "datadog.aggregation.window_ms";
+    public static final String AGGREGATION_RAW_SAMPLE_RATE = "datadog.aggregation.raw_sample_rate";
+    public static final String AGGREGATION_MAX_SERIES = "datadog.aggregation.max_series";
+    public static final String AGGREGATION_URL = "datadog.aggregation.url";
+    public static final String DESTINATION_PREFIX = "datadog.destination.";
+    public static final String DESTINATION_TOPICS_REGEX = "topics.regex";
+    public static final String DESTINATION_HEADER_NAME = "header.name";
+    public static final String DESTINATION_HEADER_VALUE = "header.value";
+    // Settings of the main config a destination can override, as datadog.destination.<name>.<setting>
+    private static final List<String> DESTINATION_OVERRIDES = Arrays.asList(DD_API_KEY, DD_SITE, DD_URL, PROXY_URL, PROXY_PORT);
 
     // Respect limit documented at https://docs.datadoghq.com/api/?lang=bash#logs
     public final Integer ddMaxBatchLength;
@@ -46,6 +103,8 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
     private final String ddUrl;
     private final String ddSite;
     public final String ddTags;
+    public final List<String> ddDynamicTags;
+    public final Integer ddDynamicTagsCacheSize;
     public final String ddService;
     public final String ddHostname;
     public final String ddApiKey;
@@ -53,8 +112,51 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
     public final Integer proxyPort;
     public final Integer retryMax;
     public final Integer retryBackoffMs;
+    public final Long retryPayloadCacheBytes;
+    public final boolean retrySkipDelivered;
     public final boolean addPublishedDate;
     public final boolean parseRecordHeaders;
+    public final Integer schemaCacheSize;
+    public final Integer parallelCompressionThreshold;
+    public final boolean parallelEncoding;
+    public final Integer parallelEncodingChunkSize;
+    public final List<String> includeFields;
+    public final List<String> excludeFields;
+    public final Integer maxStringLength;
+    public final Pattern maskPattern;
+    public final String maskReplacement;
+    public final boolean offHeapEnabled;
+    public final Long offHeapMaxBytes;
+    public final boolean explodeArrays;
+    public final String explodeField;
+    public final boolean bytesAsText;
+    public final boolean streamingRequests;
+    public final Integer maxPayloadBytes;
+    public final boolean coalesceTopics;
+    public final Integer requestConcurrency;
+    public final boolean requestVirtualThreads;
+    public final boolean connectionPrewarm;
+    public final boolean connectionValidate;
+    public final boolean deliveryLagMetrics;
+    public final boolean sharedRuntime;
+    public final Integer sharedRuntimeMaxInFlight;
+    public final Long quotaBytesPerSecond;
+    public final Long quotaLogsPerSecond;
+    public final String priorityField;
+    public final String priorityHeader;
+    public final List<String> priorityValues;
+    public final Integer priorityBatchLength;
+    public final Integer priorityRequestConcurrency;
+    public final List<String> destinations;
+    private final List<DestinationRoute> destinationRoutes;
+    public final List<String> aggregationTopics;
+    public final String aggregationMetricPrefix;
+    public final List<String> aggregationTagFields;
+    public final List<String> aggregationValueFields;
+    public final Long aggregationWindowMs;
+    public final Double aggregationRawSampleRate;
+    public final Integer aggregationMaxSeries;
+    private final String aggregationUrl;
 
     public static final ConfigDef CONFIG_DEF = baseConfigDef();
 
@@ -65,6 +167,8 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
     public DatadogLogsSinkConnectorConfig(Boolean useSSL, Integer ddMaxBatchLength, Map<String, String> props) {
         super(baseConfigDef(), props);
         ddTags = getTags(DD_TAGS);
+        ddDynamicTags = getList(DD_DYNAMIC_TAGS);
+        ddDynamicTagsCacheSize = getInt(DD_DYNAMIC_TAGS_CACHE_SIZE);
         ddService = getString(DD_SERVICE);
         ddHostname = getString(DD_HOSTNAME);
         ddApiKey = getPasswordValue(DD_API_KEY);
@@ -72,13 +176,56 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
         proxyPort = getInt(PROXY_PORT);
         retryMax = getInt(MAX_RETRIES);
         retryBackoffMs = getInt(RETRY_BACKOFF_MS);
+        retryPayloadCacheBytes = getLong(RETRY_PAYLOAD_CACHE_BYTES);
+        retrySkipDelivered = getBoolean(RETRY_SKIP_DELIVERED);
         this.useSSL = useSSL;
         this.ddUrl = getString(DD_URL);
         this.ddSite = getString(DD_SITE);
         this.ddMaxBatchLength = ddMaxBatchLength;
         this.addPublishedDate = getBoolean(ADD_PUBLISHED_DATE);
         this.parseRecordHeaders = getBoolean(PARSE_RECORD_HEADERS);
+        this.schemaCacheSize = getInt(SCHEMA_CACHE_SIZE);
+        this.parallelCompressionThreshold = getInt(PARALLEL_COMPRESSION_THRESHOLD);
+        this.parallelEncoding = getBoolean(PARALLEL_ENCODING);
+        this.parallelEncodingChunkSize = getInt(PARALLEL_ENCODING_CHUNK_SIZE);
+        this.includeFields = getList(INCLUDE_FIELDS);
+        this.excludeFields = getList(EXCLUDE_FIELDS);
+        this.maxStringLength = getInt(MAX_STRING_LENGTH);
+        this.maskPattern = getPattern(MASK_PATTERN);
+        this.maskReplacement = getString(MASK_REPLACEMENT);
+        this.offHeapEnabled = getBoolean(OFF_HEAP_ENABLED);
+        this.offHeapMaxBytes = getLong(OFF_HEAP_MAX_BYTES);
+        this.explodeArrays = getBoolean(EXPLODE_ARRAYS);
+        this.explodeField = getString(EXPLODE_FIELD);
+        this.bytesAsText = getBoolean(BYTES_AS_TEXT);
+        this.streamingRequests = getBoolean(STREAMING_REQUESTS);
+        this.maxPayloadBytes = getInt(MAX_PAYLOAD_BYTES);
+        this.coalesceTopics = getBoolean(COALESCE_TOPICS);
+        this.requestConcurrency = getInt(REQUEST_CONCURRENCY);
+        this.requestVirtualThreads = getBoolean(REQUEST_VIRTUAL_THREADS);
+        this.connectionPrewarm = getBoolean(CONNECTION_PREWARM);
+        this.connectionValidate = getBoolean(CONNECTION_VALIDATE);
+        this.deliveryLagMetrics = getBoolean(DELIVERY_LAG_METRICS);
+        this.sharedRuntime = getBoolean(SHARED_RUNTIME);
+        this.sharedRuntimeMaxInFlight = getInt(SHARED_RUNTIME_MAX_IN_FLIGHT);
+        this.quotaBytesPerSecond = getLong(QUOTA_BYTES_PER_SECOND);
+        this.quotaLogsPerSecond = getLong(QUOTA_LOGS_PER_SECOND);
+        this.priorityField = getString(PRIORITY_FIELD);
+        this.priorityHeader = getString(PRIORITY_HEADER);
+        this.priorityValues = getList(PRIORITY_VALUES);
+        this.priorityBatchLength = Math.min(getInt(PRIORITY_BATCH_SIZE), ddMaxBatchLength);
+        this.priorityRequestConcurrency = getInt(PRIORITY_REQUEST_CONCURRENCY);
+        this.destinations = getList(DESTINATIONS);
+        this.aggregationTopics = getList(AGGREGATION_TOPICS);
+        this.aggregationMetricPrefix = getString(AGGREGATION_METRIC_PREFIX);
+        this.aggregationTagFields = getList(AGGREGATION_TAG_FIELDS);
+        this.aggregationValueFields = getList(AGGREGATION_VALUE_FIELDS);
+        this.aggregationWindowMs = getLong(AGGREGATION_WINDOW_MS);
+        this.aggregationRawSampleRate = getDouble(AGGREGATION_RAW_SAMPLE_RATE);
+        this.aggregationMaxSeries = getInt(AGGREGATION_MAX_SERIES);
+        this.aggregationUrl = getString(AGGREGATION_URL);
         validateConfig();
+        this.destinationRoutes = buildDestinationRoutes();
     }
 
     public URL getURL() throws MalformedURLException {
@@ -94,17 +241,111 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
 
         return new URL(protocol + domain + "/api/v2/logs");
     }
+
+    /**
+     * @return the endpoint of the Datadog metrics API that aggregated metrics are sent to.
+     */
+    public URL getMetricsURL() throws MalformedURLException {
+        String protocol = useSSL ? "https://" : "http://";
+
+        String domain = String.format(DD_METRICS_URL_FORMAT_FROM_SITE, DEFAULT_DD_SITE);
+
+        if (aggregationUrl != null && !aggregationUrl.isEmpty()) {
+            domain = aggregationUrl;
+        } else if (ddSite != null && !ddSite.isEmpty()) {
+            domain = String.format(DD_METRICS_URL_FORMAT_FROM_SITE, ddSite);
+        }
+
+        return new URL(protocol + domain + "/api/v1/series");
+    }
     private void validateConfig() {
         if (getPasswordValue(DD_API_KEY) == null) {
             throw new ConfigException("API Key must not be empty.");
         }
+        RecordTags.parse(ddDynamicTags);
+    }
+
+    /**
+     * @return the routing rules of the configured destinations, in the order records are matched against them.
+     */
+    List<DestinationRoute> getDestinationRoutes() {
+        return destinationRoutes;
+    }
+
+    private List<DestinationRoute> buildDestinationRoutes() {
+        List<DestinationRoute> routes = new ArrayList<>(destinations.size());
+        for (String name : destinations) {
+            String prefix = DESTINATION_PREFIX + name + ".";
+            Map<String, Object> settings = originalsWithPrefix(prefix);
+
+            Pattern topics = null;
+            Object topicsRegex = settings.get(DESTINATION_TOPICS_REGEX);
+            if (topicsRegex != null) {
+                try {
+                    topics = Pattern.compile(topicsRegex.toString());
+                } catch (PatternSyntaxException e) {
+                    throw new ConfigException(prefix + DESTINATION_TOPICS_REGEX, topicsRegex, e.getDescription());
+                }
+            }
+
+            Object headerName = settings.get(DESTINATION_HEADER_NAME);
+            Object headerValue = settings.get(DESTINATION_HEADER_VALUE);
+            if ((headerName == null) != (headerValue == null)) {
+                throw new ConfigException("Destination " + name + " must set both " + prefix + DESTINATION_HEADER_NAME
+                        + " and " + prefix + DESTINATION_HEADER_VALUE + ".");
+            }
+            if (topics == null && headerName == null) {
+                throw new ConfigException("Destination " + name + " must set " + prefix + DESTINATION_TOPICS_REGEX
+                        + " or " + prefix + DESTINATION_HEADER_NAME + ".");
+            }
+
+            routes.add(new DestinationRoute(name, topics,
+                    headerName != null ? headerName.toString() : null,
+                    headerValue != null ? headerValue.toString() : null,
+                    destinationConfig(name, settings)));
+        }
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * Builds the config of a destination from this config and the settings it overrides. The endpoint is not
+     * inherited when the destination sets its own site or URL.
+     */
+    private DatadogLogsSinkConnectorConfig destinationConfig(String name, Map<String, Object> settings) {
+        if (!settings.containsKey(suffix(DD_API_KEY))) {
+            throw new ConfigException("Destination " + name + " must set " + DESTINATION_PREFIX + name + "."
+                    + suffix(DD_API_KEY) + ".");
+        }
+
+        Map<String, String> props = new HashMap<>(originalsStrings());
+        props.remove(DESTINATIONS);
+        if (settings.containsKey(suffix(DD_SITE)) || settings.containsKey(suffix(DD_URL))) {
+            props.remove(DD_SITE);
+            props.remove(DD_URL);
+        }
+        for (String setting : DESTINATION_OVERRIDES) {
+            Object value = settings.get(suffix(setting));
+            if (value != null) {
+                props.put(setting, value.toString());
+            }
+        }
+        return new DatadogLogsSinkConnectorConfig(useSSL, ddMaxBatchLength, props);
+    }
+
+    private static String suffix(String setting) {
+        return setting.substring("datadog.".length());
     }
 
     private static ConfigDef baseConfigDef() {
         final ConfigDef configDef = new ConfigDef();
         addMetadataConfigs(configDef);
         addProxyConfigs(configDef);
+        addConnectionConfigs(configDef);
         addRetryConfigs(configDef);
+        addEncodingConfigs(configDef);
+        addPriorityConfigs(configDef);
+        addRoutingConfigs(configDef);
+        addAggregationConfigs(configDef);
         return configDef;
     }
 
@@ -132,6 +373,30 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
                 ++orderInGroup,
                 Width.LONG,
                 "Tags Metadata"
+        ).define(
+                DD_DYNAMIC_TAGS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Tags added to the logs of each record from its content, as <tag>=<source> where the source is " +
+                        "`key`, `header:<name>` or `field:<name>` for a top-level field of the record value. " +
+                        "Records without a value for a tag are sent without it.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Dynamic Tags"
+        ).define(
+                DD_DYNAMIC_TAGS_CACHE_SIZE,
+                Type.INT,
+                1024,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of combinations of topic and dynamic tag values whose encoded tags are kept " +
+                        "for reuse.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Dynamic Tags Cache Size"
         ).define(
                 DD_SERVICE,
                 Type.STRING,
@@ -214,6 +479,156 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
         );
     }
 
+    private static void addConnectionConfigs(ConfigDef configDef) {
+        int orderInGroup = 0;
+        final String group = "Datadog Connection";
+
+        configDef.define(
+                STREAMING_REQUESTS,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, requests are sent with chunked transfer " +
+                        "encoding and records are encoded and compressed onto the connection while the batch is produced. " +
+                        "Payloads of failed requests are then not kept for retries.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Streaming Requests"
+        ).define(
+                MAX_PAYLOAD_BYTES,
+                Type.INT,
+                5 * 1000 * 1000,
+                ConfigDef.Range.atLeast(1024),
+                Importance.LOW,
+                "The maximum number of uncompressed bytes of the payload of a request. Batches that encode to more " +
+                        "are split into several requests.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Max Payload Size (bytes)"
+        ).define(
+                COALESCE_TOPICS,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, the records of all topics are batched " +
+                        "together, and requests are only cut by their number of entries and payload size. Each " +
+                        "entry keeps the tags of its topic.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Coalesce Topics"
+        ).define(
+                REQUEST_CONCURRENCY,
+                Type.INT,
+                1,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The maximum number of requests a task sends at the same time. Above 1, batches that fit in one " +
+                        "request are sent in the background while the next ones are encoded, and the write completes " +
+                        "once all of them are acknowledged.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Request Concurrency"
+        ).define(
+                REQUEST_VIRTUAL_THREADS,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true` and the request concurrency is above 1, each " +
+                        "request in flight runs on its own virtual thread on Java 21 and above. Older runtimes use " +
+                        "platform threads.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Virtual Threads"
+        ).define(
+                CONNECTION_PREWARM,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, each task opens a connection to the logs " +
+                        "endpoint when it starts so that the first batch does not pay for DNS resolution, TCP and TLS setup.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Pre-open Connection"
+        ).define(
+                CONNECTION_VALIDATE,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, connector config validation checks that the " +
+                        "logs endpoint is reachable and accepts the API key.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Validate Connection"
+        ).define(
+                DELIVERY_LAG_METRICS,
+                Type.BOOLEAN,
+                true,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, the delay between the Kafka timestamp of " +
+                        "records and their acknowledgement by the logs endpoint is exposed per partition over JMX.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Delivery Lag Metrics"
+        ).define(
+                SHARED_RUNTIME,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, the tasks of the connector that run in the " +
+                        "same worker share one compression executor and one limit on requests in flight.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Shared Sender Runtime"
+        ).define(
+                SHARED_RUNTIME_MAX_IN_FLIGHT,
+                Type.INT,
+                4,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The maximum number of requests the tasks of the connector that run in the same worker send at " +
+                        "the same time when the shared sender runtime is enabled.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Max Requests In Flight"
+        ).define(
+                QUOTA_BYTES_PER_SECOND,
+                Type.LONG,
+                0L,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of uncompressed payload bytes per second the tasks of the connector that run " +
+                        "in the same worker send. Once it is reached, the tasks pause their partitions until the " +
+                        "quota refills. 0 disables the limit.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Egress Quota (bytes/s)"
+        ).define(
+                QUOTA_LOGS_PER_SECOND,
+                Type.LONG,
+                0L,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of log entries per second the tasks of the connector that run in the same " +
+                        "worker send. Once it is reached, the tasks pause their partitions until the quota refills. " +
+                        "0 disables the limit.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Egress Quota (logs/s)"
+        );
+    }
+
     private static void addRetryConfigs(ConfigDef configDef) {
         int orderInGroup = 0;
         final String group = "Datadog Retry";
@@ -239,6 +654,375 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
                 ++orderInGroup,
                 Width.LONG,
                 "Retry Backoff (millis)"
+        ).define(
+                RETRY_PAYLOAD_CACHE_BYTES,
+                Type.LONG,
+                32L * 1024 * 1024,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of bytes of compressed payloads of failed requests each task keeps, so that " +
+                        "retries resend them instead of encoding and compressing the same records again. Set to 0 to disable.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Retry Payload Cache Size (bytes)"
+        ).define(
+                RETRY_SKIP_DELIVERED,
+                Type.BOOLEAN,
+                true,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, records that Kafka Connect redelivers after a " +
+                        "failed write are not sent again if the Datadog Logs API already acknowledged them along with " +
+                        "every record before them in their partition.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Skip Delivered Records"
+        );
+    }
+
+    private static void addEncodingConfigs(ConfigDef configDef) {
+        int orderInGroup = 0;
+        final String group = "Datadog Encoding";
+
+        configDef.define(
+                SCHEMA_CACHE_SIZE,
+                Type.INT,
+                256,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of record schemas for which a compiled JSON encoder is cached. " +
+                        "The least recently used encoders are evicted when more schema versions are seen.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Schema Encoder Cache Size"
+        ).define(
+                PARALLEL_COMPRESSION_THRESHOLD,
+                Type.INT,
+                1024 * 1024,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "Payloads of at least this many bytes are gzipped in independent blocks on a shared pool of " +
+                        "compression threads. Set to 0 to always compress on the task thread.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Parallel Compression Threshold (bytes)"
+        ).define(
+                PARALLEL_ENCODING,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, the records of batches of at least two chunks " +
+                        "are encoded chunk by chunk on a shared pool of encoding threads and joined in their original " +
+                        "order. Batches encoded off-heap or streamed are always encoded on the task thread.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Parallel Encoding"
+        ).define(
+                PARALLEL_ENCODING_CHUNK_SIZE,
+                Type.INT,
+                64,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The number of log entries each encoding thread encodes at a time when parallel encoding is enabled.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Parallel Encoding Chunk Size"
+        ).define(
+                OFF_HEAP_ENABLED,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, records are encoded as they are added to a " +
+                        "batch into direct buffers, so that pending payloads are held off the heap until they are sent.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Off-heap Encoding"
+        ).define(
+                OFF_HEAP_MAX_BYTES,
+                Type.LONG,
+                64L * 1024 * 1024,
+                ConfigDef.Range.atLeast(64 * 1024),
+                Importance.LOW,
+                "The maximum number of bytes of direct buffers each task and destination uses for off-heap " +
+                        "encoding. Pending batches are sent early when it is used up.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Off-heap Budget (bytes)"
+        ).define(
+                EXPLODE_ARRAYS,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, record values that are arrays are sent as one " +
+                        "log per element, each with the metadata and timestamp of the record.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Explode Arrays"
+        ).define(
+                EXPLODE_FIELD,
+                Type.STRING,
+                null,
+                Importance.LOW,
+                "The name of a top-level array field of record values whose elements are sent as one log each, " +
+                        "with the metadata and timestamp of the record. The other fields of the value are not sent. " +
+                        "Values without the field are sent as one log.",
+                group,
+                ++orderInGroup,
+                Width.MEDIUM,
+                "Explode Field"
+        ).define(
+                BYTES_AS_TEXT,
+                Type.BOOLEAN,
+                false,
+                Importance.LOW,
+                "Valid settings are true or false. When set to `true`, record values that are byte arrays are sent " +
+                        "as UTF-8 text messages instead of base64 strings.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Bytes as Text"
+        ).define(
+                INCLUDE_FIELDS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Dot-separated paths of the fields of record values to send, such as `user.id`. Fields that are " +
+                        "not on one of the paths are dropped while encoding. Leave empty to send all fields.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Included Fields"
+        ).define(
+                EXCLUDE_FIELDS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Dot-separated paths of the fields of record values to drop while encoding, along with their " +
+                        "nested fields.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Excluded Fields"
+        ).define(
+                MAX_STRING_LENGTH,
+                Type.INT,
+                0,
+                ConfigDef.Range.atLeast(0),
+                Importance.LOW,
+                "The maximum number of characters of string values; longer ones are truncated. Set to 0 to keep " +
+                        "strings whole.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Max String Length"
+        ).define(
+                MASK_PATTERN,
+                Type.STRING,
+                null,
+                Importance.LOW,
+                "A regular expression whose matches in string values are replaced with the mask replacement " +
+                        "before they are sent.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Mask Pattern"
+        ).define(
+                MASK_REPLACEMENT,
+                Type.STRING,
+                "[REDACTED]",
+                Importance.LOW,
+                "The text that replaces the matches of the mask pattern.",
+                group,
+                ++orderInGroup,
+                Width.MEDIUM,
+                "Mask Replacement"
+        );
+    }
+
+    private static void addPriorityConfigs(ConfigDef configDef) {
+        int orderInGroup = 0;
+        final String group = "Datadog Priority";
+
+        configDef.define(
+                PRIORITY_FIELD,
+                Type.STRING,
+                null,
+                Importance.LOW,
+                "A top-level field of record values, such as `level` or `status`, whose value sends a record to the " +
+                        "priority lane. Priority records are batched separately and sent before any bulk request.",
+                group,
+                ++orderInGroup,
+                Width.MEDIUM,
+                "Priority Field"
+        ).define(
+                PRIORITY_HEADER,
+                Type.STRING,
+                null,
+                Importance.LOW,
+                "A record header whose value sends a record to the priority lane.",
+                group,
+                ++orderInGroup,
+                Width.MEDIUM,
+                "Priority Header"
+        ).define(
+                PRIORITY_VALUES,
+                Type.LIST,
+                "emergency,alert,critical,error,fatal",
+                Importance.LOW,
+                "The values of the priority field or header, compared case-insensitively, of records that take the " +
+                        "priority lane.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Priority Values"
+        ).define(
+                PRIORITY_BATCH_SIZE,
+                Type.INT,
+                50,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The maximum number of records in a batch of the priority lane. A full priority batch is sent right " +
+                        "away, without waiting for the rest of the records of the put. Neither lane lingers across " +
+                        "puts: the records of both are sent before the put completes.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Priority Batch Size"
+        ).define(
+                PRIORITY_REQUEST_CONCURRENCY,
+                Type.INT,
+                1,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The maximum number of requests of the priority lane a task sends at the same time when " +
+                        "`datadog.request.concurrency` is above 1. These are on top of the bulk requests, so that " +
+                        "priority batches are sent even when as many bulk requests as allowed are in flight.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Priority Request Concurrency"
+        );
+    }
+
+    private static void addRoutingConfigs(ConfigDef configDef) {
+        int orderInGroup = 0;
+        final String group = "Datadog Routing";
+
+        configDef.define(
+                DESTINATIONS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Names of additional destinations that records are routed to by topic or header. Each destination " +
+                        "sets `datadog.destination.<name>.api_key`, a `topics.regex` and/or a `header.name` and " +
+                        "`header.value` to match, and may override `site`, `url`, `proxy.url` and `proxy.port`. " +
+                        "Records that match no destination are sent with the main settings.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Destinations"
+        );
+    }
+
+    private static void addAggregationConfigs(ConfigDef configDef) {
+        int orderInGroup = 0;
+        final String group = "Datadog Aggregation";
+
+        configDef.define(
+                AGGREGATION_TOPICS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Topics whose records are pre-aggregated into metrics sent to the Datadog metrics API.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Aggregated Topics"
+        ).define(
+                AGGREGATION_METRIC_PREFIX,
+                Type.STRING,
+                "kafka_connect.logs",
+                Importance.LOW,
+                "The prefix of the names of aggregated metrics.",
+                group,
+                ++orderInGroup,
+                Width.MEDIUM,
+                "Metric Prefix"
+        ).define(
+                AGGREGATION_TAG_FIELDS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Top-level fields of record values whose values tag the aggregated metrics, along with the topic.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Tag Fields"
+        ).define(
+                AGGREGATION_VALUE_FIELDS,
+                Type.LIST,
+                "",
+                Importance.LOW,
+                "Top-level numeric fields of record values, such as a duration, whose average, minimum, maximum and " +
+                        "percentiles are aggregated.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Value Fields"
+        ).define(
+                AGGREGATION_WINDOW_MS,
+                Type.LONG,
+                60000L,
+                ConfigDef.Range.atLeast(1000),
+                Importance.LOW,
+                "The length of the windows records are aggregated over before their metrics are sent.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Aggregation Window (ms)"
+        ).define(
+                AGGREGATION_RAW_SAMPLE_RATE,
+                Type.DOUBLE,
+                1.0,
+                ConfigDef.Range.between(0, 1),
+                Importance.LOW,
+                "The fraction of the records of aggregated topics that are still sent as logs. 0 only sends their " +
+                        "metrics.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Raw Sample Rate"
+        ).define(
+                AGGREGATION_MAX_SERIES,
+                Type.INT,
+                10000,
+                ConfigDef.Range.atLeast(1),
+                Importance.LOW,
+                "The maximum number of tag sets aggregated separately in a window. The records of other tag sets " +
+                        "are counted in one series tagged `aggregation:overflow`.",
+                group,
+                ++orderInGroup,
+                Width.SHORT,
+                "Max Series"
+        ).define(
+                AGGREGATION_URL,
+                Type.STRING,
+                null,
+                Importance.LOW,
+                "The host and port of the metrics API that aggregated metrics are sent to. Defaults to the API of " +
+                        "`datadog.site`.",
+                group,
+                ++orderInGroup,
+                Width.LONG,
+                "Metrics URL"
         );
     }
 
@@ -251,6 +1035,19 @@ public class DatadogLogsSinkConnectorConfig extends AbstractConfig {
         return null;
     }
 
+    private Pattern getPattern(String key) {
+        String regex = getString(key);
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new ConfigException(key, regex, e.getDescription());
+        }
+    }
+
     private String getTags(String key) {
         List<String> tags = getList(key);
         if (tags != null) {
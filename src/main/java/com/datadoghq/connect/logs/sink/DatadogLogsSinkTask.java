@@ -9,15 +9,21 @@ import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.errors.RetriableException;
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.apache.kafka.connect.sink.SinkTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
@@ -28,26 +34,107 @@ public class DatadogLogsSinkTask extends SinkTask {
 
     DatadogLogsSinkConnectorConfig config;
     DatadogLogsApiWriter writer;
+    RetryPayloadCache retryPayloads;
+    DirectSlabPool slabs;
+    SharedSenderRuntime runtime;
+    DeliveryLagTracker deliveryLag;
+    DeliveredOffsets deliveredOffsets;
+    EgressQuota quota;
+    LogMetricAggregator aggregator;
+    RequestExecutor requests;
     int remainingRetries;
+    private final Set<TopicPartition> throttledPartitions = new HashSet<>();
+    private ErrantRecordReporter errantRecordReporter;
+    private boolean errantRecordReporterResolved;
 
     @Override
     public void start(Map<String, String> settings) {
         config = new DatadogLogsSinkConnectorConfig(settings);
         log.info("Starting task with config={}", config);
+        retryPayloads = new RetryPayloadCache(config.retryPayloadCacheBytes);
+        // Slabs are only allocated when they are first used
+        slabs = new DirectSlabPool(config.offHeapMaxBytes);
+        if (config.sharedRuntime) {
+            runtime = SharedSenderRuntime.acquire(settings.getOrDefault("name", ""), config.sharedRuntimeMaxInFlight);
+        }
+        if (config.deliveryLagMetrics) {
+            deliveryLag = new DeliveryLagTracker(settings.getOrDefault("name", ""));
+        }
+        if (config.retrySkipDelivered) {
+            deliveredOffsets = new DeliveredOffsets();
+        }
+        quota = EgressQuota.acquire(settings.getOrDefault("name", ""), config.quotaBytesPerSecond,
+                config.quotaLogsPerSecond);
+        // Windows outlive the writers that are replaced on retries
+        aggregator = LogMetricAggregator.of(config);
+        requests = RequestExecutor.of(settings.getOrDefault("name", ""), config);
         initWriter();
         remainingRetries = config.retryMax;
+
+        if (config.connectionPrewarm) {
+            prewarmConnection();
+        }
+    }
+
+    private void prewarmConnection() {
+        try {
+            int status = writer.checkConnection();
+            if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN) {
+                log.warn("The Datadog Logs API rejected the configured API key with HTTP {}", status);
+            } else {
+                log.debug("Pre-opened connection to the Datadog Logs API, HTTP {}", status);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to pre-open a connection to the Datadog Logs API", e);
+        }
     }
 
     protected void initWriter() {
-        writer = new DatadogLogsApiWriter(config);
+        writer = new DatadogLogsApiWriter(config, retryPayloads, slabs, this::reportRejectedRecord, runtime,
+                deliveryLag, deliveredOffsets, quota, aggregator, requests);
+    }
+
+    /**
+     * Hands a record the Datadog Logs API rejected to the errant record reporter, which writes it to the dead letter
+     * queue or fails the task according to {@code errors.tolerance}.
+     */
+    protected void reportRejectedRecord(SinkRecord record, Exception error) {
+        ErrantRecordReporter reporter = errantRecordReporter();
+        if (reporter != null) {
+            reporter.report(record, error);
+        } else {
+            DatadogLogsApiWriter.failOnRejectedRecord(record, error);
+        }
+        if (deliveredOffsets != null) {
+            deliveredOffsets.delivered(Collections.singletonList(record));
+        }
+    }
+
+    private ErrantRecordReporter errantRecordReporter() {
+        if (!errantRecordReporterResolved) {
+            try {
+                errantRecordReporter = context.errantRecordReporter();
+            } catch (NoSuchMethodError | NoClassDefFoundError e) {
+                log.warn("Rejected records cannot be reported: Kafka Connect versions before 2.6 have no errant record reporter");
+            }
+            errantRecordReporterResolved = true;
+        }
+        return errantRecordReporter;
     }
 
     @Override
     public void put(Collection<SinkRecord> records) {
         Instant start = Instant.now();
 
+        log.debug("Received {} records", records.size());
+        if (deliveredOffsets != null) {
+            int received = records.size();
+            records = deliveredOffsets.begin(records);
+            if (records.size() < received) {
+                log.debug("Skipping {} redelivered records that were already delivered", received - records.size());
+            }
+        }
         final int recordsCount = records.size();
-        log.debug("Received {} records", recordsCount);
 
         if (!records.isEmpty()) {
             final SinkRecord first = records.iterator().next();
@@ -58,11 +145,14 @@ public class DatadogLogsSinkTask extends SinkTask {
         }
 
         try {
-            writer.write(records);
+            write(records);
             log.debug(
                     "Wrote {} records in {}ms",
                     recordsCount, Duration.between(start, Instant.now()).toMillis()
             );
+        } catch (RecordRejectedException e) {
+            // Rejected records that could not be reported, retrying would fail the same way
+            throw e;
         } catch (Exception e) {
             log.warn(
                     "Write of {} records failed, remaining retries: {}",
@@ -79,6 +169,9 @@ public class DatadogLogsSinkTask extends SinkTask {
                         config.retryMax - remainingRetries,
                         config.retryBackoffMs
                 );
+                if (JfrEvents.AVAILABLE) {
+                    recordRetryBackoff(recordsCount, sleepTimeMs, e);
+                }
                 remainingRetries--;
                 context.timeout(sleepTimeMs);
                 throw new RetriableException(e);
@@ -86,6 +179,53 @@ public class DatadogLogsSinkTask extends SinkTask {
         }
 
         remainingRetries = config.retryMax;
+        // Records of batches that failed before are not redelivered once a put succeeds
+        retryPayloads.clear();
+        if (quota != null) {
+            applyBackpressure();
+        }
+    }
+
+    /**
+     * Pauses the assigned partitions while the egress quota is in debt, and resumes them once it is paid back.
+     * Kafka Connect keeps calling {@link #put(Collection)} with no records while they are paused, at the latest when
+     * the context timeout elapses.
+     */
+    private void applyBackpressure() {
+        long delayMs = quota.delayMs();
+        if (delayMs > 0) {
+            if (throttledPartitions.isEmpty()) {
+                throttledPartitions.addAll(context.assignment());
+                log.debug("Egress quota reached, pausing {} partitions for {}ms", throttledPartitions.size(), delayMs);
+                context.pause(throttledPartitions.toArray(new TopicPartition[0]));
+            }
+            context.timeout(delayMs);
+        } else if (!throttledPartitions.isEmpty()) {
+            log.debug("Egress quota refilled, resuming {} partitions", throttledPartitions.size());
+            context.resume(throttledPartitions.toArray(new TopicPartition[0]));
+            throttledPartitions.clear();
+        }
+    }
+
+    private void write(Collection<SinkRecord> records) throws IOException {
+        try {
+            writer.write(records);
+        } finally {
+            if (deliveredOffsets != null) {
+                deliveredOffsets.end();
+            }
+        }
+    }
+
+    private void recordRetryBackoff(int recordsCount, long sleepTimeMs, Exception e) {
+        JfrEvents.RetryBackoffEvent event = new JfrEvents.RetryBackoffEvent();
+        if (event.shouldCommit()) {
+            event.recordCount = recordsCount;
+            event.remainingRetries = remainingRetries;
+            event.backoff = sleepTimeMs;
+            event.error = e.toString();
+            event.commit();
+        }
     }
 
     @Override
@@ -93,14 +233,66 @@ public class DatadogLogsSinkTask extends SinkTask {
         log.debug("Flushing data to Datadog with the following offsets: {}", offsets);
     }
 
+    @Override
+    public void open(Collection<TopicPartition> partitions) {
+        log.debug("Opening the task for topic partitions: {}", partitions);
+        if (deliveredOffsets != null) {
+            deliveredOffsets.reset(partitions);
+        }
+        if (aggregator != null) {
+            aggregator.reset(partitions);
+        }
+        if (!throttledPartitions.isEmpty()) {
+            // Partitions assigned while the quota is in debt wait along with the others
+            throttledPartitions.addAll(partitions);
+            context.pause(partitions.toArray(new TopicPartition[0]));
+        }
+    }
+
     @Override
     public void close(Collection<TopicPartition> partitions) {
         log.debug("Closing the task for topic partitions: {}", partitions);
+        if (aggregator != null) {
+            // The offsets of aggregated records are committed once they are counted
+            writer.flushMetrics();
+            aggregator.reset(partitions);
+        }
+        if (deliveredOffsets != null) {
+            deliveredOffsets.reset(partitions);
+        }
+        if (retryPayloads != null) {
+            retryPayloads.invalidate(partitions);
+        }
+        if (deliveryLag != null) {
+            deliveryLag.close(partitions);
+        }
+        throttledPartitions.removeAll(partitions);
     }
 
     @Override
     public void stop() {
         log.info("Stopping task with config={}", config);
+        if (aggregator != null && writer != null) {
+            writer.flushMetrics();
+        }
+        if (retryPayloads != null) {
+            retryPayloads.clear();
+        }
+        if (runtime != null) {
+            runtime.release();
+            runtime = null;
+        }
+        if (quota != null) {
+            quota.release();
+            quota = null;
+        }
+        if (requests != null) {
+            requests.shutdown();
+            requests = null;
+        }
+        if (deliveryLag != null) {
+            deliveryLag.stop();
+        }
     }
 
     @Override
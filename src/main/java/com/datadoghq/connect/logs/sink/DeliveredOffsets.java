@@ -0,0 +1,151 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-partition watermarks of the offset up to which every record put to the task was acknowledged by the Datadog
+ * Logs API or reported as rejected, so that the records Kafka Connect redelivers after a failed put are only sent
+ * again if they were not delivered yet.
+ * <p>
+ * A watermark only moves over records that were delivered without a gap in the order they were put, since the
+ * batches of a put are sent separately and the ones after a failed request may still have succeeded. Watermarks are
+ * dropped when partitions are opened or closed, as the records of a reassigned partition are redelivered from its
+ * committed offset.
+ */
+final class DeliveredOffsets {
+    private final Map<TopicPartition, Long> watermarks = new HashMap<>();
+    private final Map<TopicPartition, PartitionOffsets> inFlight = new HashMap<>();
+
+    /**
+     * Starts tracking the records of a put.
+     *
+     * @return the records above the watermarks of their partitions, which is the given collection itself when none
+     * of them was delivered before.
+     */
+    Collection<SinkRecord> begin(Collection<SinkRecord> records) {
+        inFlight.clear();
+        int delivered = 0;
+        PartitionOffsets partition = null;
+        for (SinkRecord record : records) {
+            if (partition == null || !partition.contains(record)) {
+                partition = inFlight.computeIfAbsent(new TopicPartition(record.topic(), record.kafkaPartition()),
+                        topicPartition -> new PartitionOffsets(topicPartition, watermarks.get(topicPartition)));
+            }
+            if (partition.isBelowWatermark(record.kafkaOffset())) {
+                delivered++;
+            } else {
+                partition.add(record.kafkaOffset());
+            }
+        }
+        if (delivered == 0) {
+            return records;
+        }
+
+        List<SinkRecord> undelivered = new ArrayList<>(records.size() - delivered);
+        for (SinkRecord record : records) {
+            Long watermark = watermarks.get(new TopicPartition(record.topic(), record.kafkaPartition()));
+            if (watermark == null || record.kafkaOffset() > watermark) {
+                undelivered.add(record);
+            }
+        }
+        return undelivered;
+    }
+
+    /**
+     * Marks records of the current put as delivered.
+     */
+    void delivered(List<SinkRecord> records) {
+        PartitionOffsets partition = null;
+        for (SinkRecord record : records) {
+            if (partition == null || !partition.contains(record)) {
+                partition = inFlight.get(new TopicPartition(record.topic(), record.kafkaPartition()));
+                if (partition == null) {
+                    continue;
+                }
+            }
+            partition.delivered(record.kafkaOffset());
+        }
+    }
+
+    /**
+     * Moves the watermarks over the records of the current put that were delivered without a gap.
+     */
+    void end() {
+        for (PartitionOffsets partition : inFlight.values()) {
+            int delivered = partition.deliveredPrefix();
+            if (delivered > 0) {
+                watermarks.put(partition.topicPartition, partition.offsets[delivered - 1]);
+            }
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Drops the watermarks of partitions that are assigned to or revoked from the task.
+     */
+    void reset(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            watermarks.remove(partition);
+            inFlight.remove(partition);
+        }
+    }
+
+    Long watermark(TopicPartition partition) {
+        return watermarks.get(partition);
+    }
+
+    private static final class PartitionOffsets {
+        private final TopicPartition topicPartition;
+        private final Long watermark;
+        // Offsets of the records of the put that are above the watermark, in the order they were put
+        private long[] offsets = new long[16];
+        private int size;
+        private final BitSet delivered = new BitSet();
+
+        PartitionOffsets(TopicPartition topicPartition, Long watermark) {
+            this.topicPartition = topicPartition;
+            this.watermark = watermark;
+        }
+
+        boolean contains(SinkRecord record) {
+            return topicPartition.partition() == record.kafkaPartition() && topicPartition.topic().equals(record.topic());
+        }
+
+        boolean isBelowWatermark(long offset) {
+            return watermark != null && offset <= watermark;
+        }
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+
+        void delivered(long offset) {
+            // Kafka Connect puts the records of a partition in offset order
+            int index = Arrays.binarySearch(offsets, 0, size, offset);
+            if (index >= 0) {
+                delivered.set(index);
+            }
+        }
+
+        int deliveredPrefix() {
+            return Math.min(delivered.nextClearBit(0), size);
+        }
+    }
+}
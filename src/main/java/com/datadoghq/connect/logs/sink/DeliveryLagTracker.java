@@ -0,0 +1,262 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks, per partition, the delay between the Kafka timestamp of records and the moment their batch was
+ * acknowledged by the Datadog Logs API, and exposes it over JMX as
+ * {@code com.datadoghq.connect.logs:type=delivery-lag,connector=<name>,topic=<topic>,partition=<partition>}.
+ * <p>
+ * Only the task thread records, into fixed log-scale buckets, so recording costs a map lookup per partition change
+ * and an uncontended increment per record. Readers merge the buckets of the current and the previous window, leaving
+ * out the windows that ended more than a window ago, so that an idle partition does not report its last lag forever.
+ * Records that are only counted in log metrics are not acknowledged by the API and are not tracked.
+ */
+final class DeliveryLagTracker {
+    private static final Logger log = LoggerFactory.getLogger(DeliveryLagTracker.class);
+    private static final long WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+    // Upper bounds in milliseconds, four buckets per power of two from 1ms to about 12 days
+    private static final long[] BUCKET_BOUNDS = bucketBounds();
+    private static final AtomicLongArray EMPTY_BUCKETS = new AtomicLongArray(BUCKET_BOUNDS.length);
+
+    private final String connector;
+    private final LongSupplier clock;
+    private final Map<TopicPartition, PartitionLag> partitions = new ConcurrentHashMap<>();
+
+    DeliveryLagTracker(String connector) {
+        this(connector, System::currentTimeMillis);
+    }
+
+    DeliveryLagTracker(String connector, LongSupplier clock) {
+        this.connector = connector;
+        this.clock = clock;
+    }
+
+    /**
+     * Records the delivery of a batch of records acknowledged at the given time.
+     */
+    void acknowledged(List<SinkRecord> records, long ackTimeMs) {
+        PartitionLag lag = null;
+        for (SinkRecord record : records) {
+            if (record.timestamp() == null) {
+                continue;
+            }
+            if (lag == null || lag.partition != record.kafkaPartition() || !lag.topic.equals(record.topic())) {
+                lag = partition(new TopicPartition(record.topic(), record.kafkaPartition()));
+            }
+            lag.record(ackTimeMs - record.timestamp(), record.kafkaOffset(), record.timestamp(), ackTimeMs);
+        }
+    }
+
+    private PartitionLag partition(TopicPartition topicPartition) {
+        PartitionLag lag = partitions.get(topicPartition);
+        if (lag == null) {
+            lag = new PartitionLag(topicPartition);
+            partitions.put(topicPartition, lag);
+            register(lag);
+        }
+        return lag;
+    }
+
+    /**
+     * Stops tracking partitions that are no longer assigned to the task.
+     */
+    void close(Collection<TopicPartition> closed) {
+        for (TopicPartition topicPartition : closed) {
+            PartitionLag lag = partitions.remove(topicPartition);
+            if (lag != null) {
+                unregister(lag);
+            }
+        }
+    }
+
+    void stop() {
+        close(partitions.keySet());
+    }
+
+    PartitionDeliveryLagMBean get(TopicPartition topicPartition) {
+        return partitions.get(topicPartition);
+    }
+
+    private void register(PartitionLag lag) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            StandardMBean mbean = new StandardMBean(lag, PartitionDeliveryLagMBean.class);
+            try {
+                server.registerMBean(mbean, lag.name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by a task that had the partition before a rebalance
+                server.unregisterMBean(lag.name);
+                server.registerMBean(mbean, lag.name);
+            }
+        } catch (JMException e) {
+            log.warn("Unable to register delivery lag metrics for {}", lag.name, e);
+        }
+    }
+
+    private void unregister(PartitionLag lag) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(lag.name)) {
+                server.unregisterMBean(lag.name);
+            }
+        } catch (JMException e) {
+            log.debug("Unable to unregister delivery lag metrics for {}", lag.name, e);
+        }
+    }
+
+    private static long[] bucketBounds() {
+        long[] bounds = new long[4 * 30];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Math.max(i + 1, (long) Math.ceil(Math.pow(2, i / 4.0)));
+        }
+        return bounds;
+    }
+
+    static int bucket(long lagMs) {
+        int index = Arrays.binarySearch(BUCKET_BOUNDS, Math.max(lagMs, 0));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, BUCKET_BOUNDS.length - 1);
+    }
+
+    private final class PartitionLag implements PartitionDeliveryLagMBean {
+        private final String topic;
+        private final int partition;
+        private final ObjectName name;
+        private volatile AtomicLongArray current = new AtomicLongArray(BUCKET_BOUNDS.length);
+        private volatile AtomicLongArray previous = new AtomicLongArray(BUCKET_BOUNDS.length);
+        private volatile long windowStartMs;
+        private volatile long maxMs;
+        private volatile long previousMaxMs;
+        private volatile long count;
+        private volatile long lastAcknowledgedOffset = -1;
+        private volatile long lastAcknowledgedTimestamp = -1;
+
+        PartitionLag(TopicPartition topicPartition) {
+            this.topic = topicPartition.topic();
+            this.partition = topicPartition.partition();
+            this.name = objectName(topicPartition);
+        }
+
+        private ObjectName objectName(TopicPartition topicPartition) {
+            try {
+                return new ObjectName("com.datadoghq.connect.logs:type=delivery-lag,connector="
+                        + ObjectName.quote(connector) + ",topic=" + ObjectName.quote(topicPartition.topic())
+                        + ",partition=" + topicPartition.partition());
+            } catch (JMException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        // Only called from the task thread
+        void record(long lagMs, long offset, long timestamp, long nowMs) {
+            if (nowMs - windowStartMs >= WINDOW_MS) {
+                previous = nowMs - windowStartMs < 2 * WINDOW_MS ? current : new AtomicLongArray(BUCKET_BOUNDS.length);
+                current = new AtomicLongArray(BUCKET_BOUNDS.length);
+                previousMaxMs = nowMs - windowStartMs < 2 * WINDOW_MS ? maxMs : 0;
+                windowStartMs = nowMs;
+                maxMs = 0;
+            }
+            current.incrementAndGet(bucket(lagMs));
+            if (lagMs > maxMs) {
+                maxMs = lagMs;
+            }
+            count++;
+            if (offset > lastAcknowledgedOffset) {
+                lastAcknowledgedOffset = offset;
+                lastAcknowledgedTimestamp = timestamp;
+            }
+        }
+
+        private long percentile(double quantile) {
+            long age = clock.getAsLong() - windowStartMs;
+            if (age >= 2 * WINDOW_MS) {
+                return 0;
+            }
+            AtomicLongArray first = current;
+            // Once the current window has ended, it is the previous one of the next record
+            AtomicLongArray second = age < WINDOW_MS ? previous : EMPTY_BUCKETS;
+            long total = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                total += first.get(i) + second.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += first.get(i) + second.get(i);
+                if (seen >= rank) {
+                    return BUCKET_BOUNDS[i];
+                }
+            }
+            return BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1];
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public long getP50Ms() {
+            return percentile(0.5);
+        }
+
+        @Override
+        public long getP90Ms() {
+            return percentile(0.9);
+        }
+
+        @Override
+        public long getP99Ms() {
+            return percentile(0.99);
+        }
+
+        @Override
+        public long getMaxMs() {
+            long age = clock.getAsLong() - windowStartMs;
+            if (age >= 2 * WINDOW_MS) {
+                return 0;
+            }
+            return age < WINDOW_MS ? Math.max(maxMs, previousMaxMs) : maxMs;
+        }
+
+        @Override
+        public long getLastAcknowledgedOffset() {
+            return lastAcknowledgedOffset;
+        }
+
+        @Override
+        public long getLastAcknowledgedTimestamp() {
+            return lastAcknowledgedTimestamp;
+        }
+    }
+}
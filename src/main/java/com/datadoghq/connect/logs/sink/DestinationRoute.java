@@ -0,0 +1,66 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Routing rule of an additional destination: the records it matches are sent with its own config, and so to its
+ * own site and organization.
+ * <p>
+ * A record matches when its topic matches the topic pattern and its last header with the configured name has the
+ * configured value; a rule without one of the two conditions only checks the other.
+ */
+final class DestinationRoute {
+    private final String name;
+    private final Pattern topics;
+    private final String headerName;
+    private final String headerValue;
+    private final DatadogLogsSinkConnectorConfig config;
+
+    DestinationRoute(String name, Pattern topics, String headerName, String headerValue,
+                     DatadogLogsSinkConnectorConfig config) {
+        this.name = name;
+        this.topics = topics;
+        this.headerName = headerName;
+        this.headerValue = headerValue;
+        this.config = config;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    DatadogLogsSinkConnectorConfig getConfig() {
+        return config;
+    }
+
+    boolean matches(SinkRecord record) {
+        if (topics != null && !topics.matcher(record.topic()).matches()) {
+            return false;
+        }
+        if (headerName == null) {
+            return true;
+        }
+
+        Header header = record.headers().lastWithName(headerName);
+        if (header == null || header.value() == null) {
+            return false;
+        }
+        Object value = header.value();
+        String text = value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+        return headerValue.equals(text);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size direct buffers that pending batches are encoded into, so that their payloads are held off the heap.
+ * <p>
+ * Released slabs are kept for reuse rather than freed, since allocating direct memory is slow, and the total
+ * allocated size never exceeds the budget of the pool. Pools belong to the task, so that the writers it replaces on
+ * retries share the same budget.
+ */
+final class DirectSlabPool {
+    static final int SLAB_SIZE = 64 * 1024;
+
+    private final int maxSlabs;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private final Map<String, DirectSlabPool> destinations = new HashMap<>();
+    private int allocated;
+
+    DirectSlabPool(long maxBytes) {
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / SLAB_SIZE);
+    }
+
+    /**
+     * @return the pool of a routing destination, with the budget of its config.
+     */
+    DirectSlabPool forDestination(String name, long maxBytes) {
+        return destinations.computeIfAbsent(name, destination -> new DirectSlabPool(maxBytes));
+    }
+
+    /**
+     * @return an empty slab, or {@code null} when the budget is used up by slabs in use.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer slab = free.poll();
+        if (slab != null) {
+            ((Buffer) slab).clear();
+            return slab;
+        }
+        if (allocated < maxSlabs) {
+            allocated++;
+            return ByteBuffer.allocateDirect(SLAB_SIZE);
+        }
+        return null;
+    }
+
+    void release(ByteBuffer slab) {
+        free.push(slab);
+    }
+
+    /**
+     * @return the number of bytes that can still be acquired.
+     */
+    long available() {
+        return (long) (maxSlabs - allocated + free.size()) * SLAB_SIZE;
+    }
+
+    int allocated() {
+        return allocated;
+    }
+}
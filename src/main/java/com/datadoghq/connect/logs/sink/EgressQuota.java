@@ -0,0 +1,140 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit on the bytes and log entries the tasks of a connector that run in the same worker send to the Datadog
+ * Logs API, enforced with token buckets that hold up to one second of their rate.
+ * <p>
+ * Every request is charged as it is sent, resent payloads included, so a bucket can go into debt by up to one write.
+ * Tasks do not wait for tokens while writing; they pause their partitions until the debt is paid back, which every
+ * task of the connector sees at the same time. Like {@link SharedSenderRuntime}, quotas are reference counted per connector.
+ */
+final class EgressQuota {
+    private static final Logger log = LoggerFactory.getLogger(EgressQuota.class);
+    private static final Map<String, EgressQuota> quotas = new HashMap<>();
+
+    private final String name;
+    private final long bytesPerSecond;
+    private final long logsPerSecond;
+    private final LongSupplier nanoTime;
+    private final TokenBucket bytes;
+    private final TokenBucket logs;
+    private int references;
+
+    EgressQuota(String name, long bytesPerSecond, long logsPerSecond, LongSupplier nanoTime) {
+        long now = nanoTime.getAsLong();
+        this.name = name;
+        this.bytesPerSecond = bytesPerSecond;
+        this.logsPerSecond = logsPerSecond;
+        this.nanoTime = nanoTime;
+        this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, now) : null;
+        this.logs = logsPerSecond > 0 ? new TokenBucket(logsPerSecond, now) : null;
+    }
+
+    /**
+     * Returns the quota of a connector, creating it if no other task of the connector holds it, or {@code null} if
+     * neither rate is limited. Every call that returns a quota must be paired with a {@link #release()}.
+     *
+     * @param bytesPerSecond the maximum number of uncompressed payload bytes per second, or 0 for no limit.
+     * @param logsPerSecond  the maximum number of log entries per second, or 0 for no limit.
+     */
+    static EgressQuota acquire(String name, long bytesPerSecond, long logsPerSecond) {
+        if (bytesPerSecond <= 0 && logsPerSecond <= 0) {
+            return null;
+        }
+
+        synchronized (quotas) {
+            EgressQuota quota = quotas.get(name);
+            if (quota == null) {
+                log.info("Limiting egress of connector {} to {} bytes/s and {} logs/s", name, bytesPerSecond, logsPerSecond);
+                quota = new EgressQuota(name, bytesPerSecond, logsPerSecond, System::nanoTime);
+                quotas.put(name, quota);
+            } else if (quota.bytesPerSecond != bytesPerSecond || quota.logsPerSecond != logsPerSecond) {
+                log.warn("Egress quota of connector {} keeps its limits of {} bytes/s and {} logs/s until all its tasks stop",
+                        name, quota.bytesPerSecond, quota.logsPerSecond);
+            }
+            quota.references++;
+            return quota;
+        }
+    }
+
+    void release() {
+        synchronized (quotas) {
+            if (--references == 0) {
+                quotas.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Takes the tokens of sent entries, going into debt if there are not enough of them.
+     */
+    synchronized void consume(long byteCount, long logCount) {
+        long now = nanoTime.getAsLong();
+        if (bytes != null) {
+            bytes.take(byteCount, now);
+        }
+        if (logs != null) {
+            logs.take(logCount, now);
+        }
+    }
+
+    /**
+     * @return the number of milliseconds until the debt of both buckets is paid back, or 0 if entries can be sent.
+     */
+    synchronized long delayMs() {
+        long now = nanoTime.getAsLong();
+        long delayNanos = Math.max(
+                bytes != null ? bytes.delayNanos(now) : 0,
+                logs != null ? logs.delayNanos(now) : 0);
+        return delayNanos > 0 ? Math.max(TimeUnit.NANOSECONDS.toMillis(delayNanos), 1) : 0;
+    }
+
+    int references() {
+        synchronized (quotas) {
+            return references;
+        }
+    }
+
+    private static final class TokenBucket {
+        private final long ratePerSecond;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(long ratePerSecond, long now) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = ratePerSecond;
+            this.refilledAt = now;
+        }
+
+        void take(long count, long now) {
+            refill(now);
+            tokens -= count;
+        }
+
+        long delayNanos(long now) {
+            refill(now);
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        }
+
+        private void refill(long now) {
+            long elapsed = now - refilledAt;
+            if (elapsed > 0) {
+                tokens = Math.min(ratePerSecond, tokens + (double) elapsed * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+                refilledAt = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Walks the log entries of a batch of records: one per record with a value, or one per non-null element of the
+ * records an {@link ArrayExploder} splits. Elements are only reached when the entry before them is consumed, so an
+ * exploded record is encoded one element at a time.
+ * <p>
+ * Entries that do not fit the payload being encoded are pushed back to start the next one. The cursor tells which
+ * records the entries consumed so far belong to, so that a batch sent in several requests can be acknowledged or
+ * split request by request.
+ */
+final class EntryCursor {
+    private final List<SinkRecord> records;
+    private final ArrayExploder exploder;
+    private final Deque<Entry> pending = new ArrayDeque<>();
+    private int index;
+    private Iterator<?> elements;
+    private SinkRecord record;
+    private int recordIndex;
+    private Schema schema;
+    private Object message;
+    private byte[] content;
+    private int consumed;
+
+    /**
+     * @param exploder splits the records into entries, or {@code null} to send every record as one entry.
+     */
+    EntryCursor(List<SinkRecord> records, ArrayExploder exploder) {
+        this.records = records;
+        this.exploder = exploder;
+    }
+
+    List<SinkRecord> records() {
+        return records;
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return {@code false} once all entries were consumed.
+     */
+    boolean next() {
+        Entry entry = pending.pollFirst();
+        if (entry != null) {
+            consumed++;
+            record = entry.record;
+            recordIndex = entry.recordIndex;
+            schema = entry.schema;
+            message = entry.message;
+            content = entry.content;
+            return true;
+        }
+
+        content = null;
+
+        while (true) {
+            if (elements != null) {
+                while (elements.hasNext()) {
+                    Object element = elements.next();
+                    if (element != null) {
+                        consumed++;
+                        message = element;
+                        return true;
+                    }
+                }
+                elements = null;
+            }
+
+            if (index >= records.size()) {
+                record = null;
+                message = null;
+                return false;
+            }
+            recordIndex = index;
+            record = records.get(index++);
+            if (record == null || record.value() == null) {
+                continue;
+            }
+
+            Collection<?> exploded = exploder != null ? exploder.elements(record) : null;
+            if (exploded != null) {
+                elements = exploded.iterator();
+                schema = exploder.elementSchema(record);
+            } else {
+                schema = record.valueSchema();
+                message = record.value();
+                consumed++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return whether an entry remains, without consuming it.
+     */
+    boolean hasNext() {
+        if (pending.isEmpty()) {
+            if (!next()) {
+                return false;
+            }
+            pushBack();
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the record of the next entry, or the number of records once all entries were consumed.
+     * The records before it have no entries left.
+     */
+    int position() {
+        return hasNext() ? pending.peekFirst().recordIndex : records.size();
+    }
+
+    /**
+     * @return the number of entries consumed so far, leaving out those pushed back.
+     */
+    int consumed() {
+        return consumed;
+    }
+
+    /**
+     * Makes the current entry the next one again.
+     */
+    void pushBack() {
+        pending.addFirst(entry());
+        consumed--;
+    }
+
+    /**
+     * Makes consumed entries the next ones again, in the same order.
+     */
+    void pushBack(List<Entry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            pending.addFirst(entries.get(i));
+        }
+        consumed -= entries.size();
+    }
+
+    /**
+     * @return the current entry, detached from the cursor.
+     */
+    Entry entry() {
+        return new Entry(record, recordIndex, schema, message, content);
+    }
+
+    /**
+     * @return the record of the current entry.
+     */
+    SinkRecord record() {
+        return record;
+    }
+
+    /**
+     * @return the schema of the message of the current entry, or {@code null} if it has none.
+     */
+    Schema schema() {
+        return schema;
+    }
+
+    /**
+     * @return the value sent as the message of the current entry.
+     */
+    Object message() {
+        return message;
+    }
+
+    /**
+     * @return the current entry as it was already encoded, or {@code null} if it was not.
+     */
+    byte[] content() {
+        return content;
+    }
+
+    static final class Entry {
+        final SinkRecord record;
+        final Schema schema;
+        final Object message;
+        // The encoded entry, when it was encoded for a request it did not fit in
+        final byte[] content;
+        // The index of the record in the records of the cursor
+        final int recordIndex;
+
+        private Entry(SinkRecord record, int recordIndex, Schema schema, Object message, byte[] content) {
+            this.record = record;
+            this.recordIndex = recordIndex;
+            this.schema = schema;
+            this.message = message;
+            this.content = content;
+        }
+
+        /**
+         * @return the entry along with its encoded content, so that it is not encoded again.
+         */
+        Entry withContent(byte[] content) {
+            return new Entry(record, recordIndex, schema, message, content);
+        }
+    }
+}
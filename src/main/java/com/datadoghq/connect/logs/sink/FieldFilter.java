@@ -0,0 +1,104 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Projection and redaction applied to record values while they are encoded.
+ * <p>
+ * Fields are addressed by dot-separated paths from the root of the value, such as {@code request.headers}; array
+ * elements share the path of their array. When include paths are set, only those fields, their descendants and the
+ * fields leading to them are encoded. Excluded paths are dropped along with their descendants. String values are
+ * masked and then truncated.
+ */
+final class FieldFilter {
+    static final FieldFilter NONE = new FieldFilter(Collections.emptyList(), Collections.emptyList(), 0, null, null);
+
+    private final Set<String> includes;
+    private final Set<String> includeAncestors;
+    private final Set<String> excludes;
+    private final int maxStringLength;
+    private final Pattern maskPattern;
+    private final String maskReplacement;
+
+    FieldFilter(List<String> includes, List<String> excludes, int maxStringLength, Pattern maskPattern,
+                String maskReplacement) {
+        this.includes = new HashSet<>(includes);
+        this.includeAncestors = new HashSet<>();
+        for (String include : includes) {
+            for (int dot = include.indexOf('.'); dot > 0; dot = include.indexOf('.', dot + 1)) {
+                includeAncestors.add(include.substring(0, dot));
+            }
+        }
+        this.excludes = new HashSet<>(excludes);
+        this.maxStringLength = maxStringLength;
+        this.maskPattern = maskPattern;
+        this.maskReplacement = maskReplacement != null ? Matcher.quoteReplacement(maskReplacement) : null;
+    }
+
+    static FieldFilter of(DatadogLogsSinkConnectorConfig config) {
+        if (config.includeFields.isEmpty() && config.excludeFields.isEmpty() && config.maxStringLength == 0
+                && config.maskPattern == null) {
+            return NONE;
+        }
+        return new FieldFilter(config.includeFields, config.excludeFields, config.maxStringLength,
+                config.maskPattern, config.maskReplacement);
+    }
+
+    boolean isIdentity() {
+        return this == NONE;
+    }
+
+    boolean projectsFields() {
+        return !includes.isEmpty() || !excludes.isEmpty();
+    }
+
+    boolean transformsStrings() {
+        return maxStringLength > 0 || maskPattern != null;
+    }
+
+    static String childPath(String path, String name) {
+        return path.isEmpty() ? name : path + "." + name;
+    }
+
+    /**
+     * @param path the path of a field whose parent is selected.
+     */
+    boolean selects(String path) {
+        if (excludes.contains(path)) {
+            return false;
+        }
+        if (includes.isEmpty() || includes.contains(path) || includeAncestors.contains(path)) {
+            return true;
+        }
+        for (int dot = path.lastIndexOf('.'); dot > 0; dot = path.lastIndexOf('.', dot - 1)) {
+            if (includes.contains(path.substring(0, dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String transform(String value) {
+        if (maskPattern != null) {
+            value = maskPattern.matcher(value).replaceAll(maskReplacement);
+        }
+        if (maxStringLength > 0 && value.length() > maxStringLength) {
+            int end = maxStringLength;
+            if (Character.isHighSurrogate(value.charAt(end - 1))) {
+                end--;
+            }
+            value = value.substring(0, end);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for the sink hot path.
+ * <p>
+ * The event classes are only loaded when {@link #AVAILABLE} is set, so the connector still runs on Java 8 builds
+ * without JFR. Each event is created and committed in place, which the JIT reduces to a flag check when the event
+ * is not enabled in a recording.
+ */
+final class JfrEvents {
+    static final boolean AVAILABLE = isAvailable();
+
+    private JfrEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Describes the partitions and offsets of a batch, only computed for events that are committed.
+     */
+    static String partitionRanges(List<SinkRecord> records) {
+        return RetryPayloadCache.BatchKey.of(records).toString();
+    }
+
+    @Name("com.datadoghq.connect.logs.Encode")
+    @Label("Batch Encoding")
+    @Category({"Datadog", "Kafka Connect Logs"})
+    @Description("Conversion of the records of a batch to the JSON payload of a request")
+    @StackTrace(false)
+    static final class EncodeEvent extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Partition Ranges")
+        String partitions;
+
+        @Label("Record Count")
+        int recordCount;
+
+        @Label("Log Count")
+        int logCount;
+
+        @Label("Raw Bytes")
+        @DataAmount
+        long rawBytes;
+    }
+
+    @Name("com.datadoghq.connect.logs.Compress")
+    @Label("Payload Compression")
+    @Category({"Datadog", "Kafka Connect Logs"})
+    @StackTrace(false)
+    static final class CompressEvent extends Event {
+        @Label("Raw Bytes")
+        @DataAmount
+        long rawBytes;
+
+        @Label("Compressed Bytes")
+        @DataAmount
+        long compressedBytes;
+
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    @Name("com.datadoghq.connect.logs.HttpRequest")
+    @Label("Logs API Request")
+    @Category({"Datadog", "Kafka Connect Logs"})
+    @Description("Request to the Datadog Logs API, from opening the connection to reading the response")
+    @StackTrace(false)
+    static final class HttpRequestEvent extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Record Count")
+        int recordCount;
+
+        @Label("Compressed Bytes")
+        @DataAmount
+        long compressedBytes;
+
+        @Label("Streaming")
+        boolean streaming;
+
+        @Label("Status Code")
+        int status;
+
+        @Label("Connect Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long connectDuration;
+
+        @Label("Write Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long writeDuration;
+
+        @Label("Response Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long responseDuration;
+    }
+
+    @Name("com.datadoghq.connect.logs.RetryBackoff")
+    @Label("Retry Backoff")
+    @Category({"Datadog", "Kafka Connect Logs"})
+    @Description("Failed write of a batch of records that Kafka Connect redelivers after a backoff")
+    @StackTrace(false)
+    static final class RetryBackoffEvent extends Event {
+        @Label("Record Count")
+        int recordCount;
+
+        @Label("Remaining Retries")
+        int remainingRetries;
+
+        @Label("Backoff")
+        @Timespan(Timespan.MILLISECONDS)
+        long backoff;
+
+        @Label("Error")
+        String error;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that JSON is encoded into directly as UTF-8.
+ * <p>
+ * String escaping follows Gson's {@code JsonWriter} so that payloads stay byte-identical to the ones previously
+ * produced through {@code JsonElement#toString()}.
+ */
+final class JsonBuffer {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final boolean[] NEEDS_ESCAPE = new boolean[0x80];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            NEEDS_ESCAPE[c] = true;
+        }
+        NEEDS_ESCAPE['"'] = true;
+        NEEDS_ESCAPE['\\'] = true;
+    }
+
+    private byte[] buf;
+    private int count;
+
+    JsonBuffer() {
+        this(1024);
+    }
+
+    JsonBuffer(int initialCapacity) {
+        this.buf = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    int size() {
+        return count;
+    }
+
+    void reset() {
+        count = 0;
+    }
+
+    /**
+     * Discards the content written after the given size.
+     */
+    void truncate(int size) {
+        count = Math.min(size, count);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    byte[] toByteArray(int offset, int length) {
+        return Arrays.copyOfRange(buf, offset, offset + length);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * Copies as much of the content from an offset as fits into a buffer.
+     *
+     * @return the number of bytes copied.
+     */
+    int copyTo(ByteBuffer target, int offset) {
+        int length = Math.min(count - offset, target.remaining());
+        target.put(buf, offset, length);
+        return length;
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    void writeBytes(JsonBuffer source, int offset, int length) {
+        writeBytes(source.buf, offset, length);
+    }
+
+    void writeNull() {
+        writeBytes(NULL);
+    }
+
+    void writeBoolean(boolean value) {
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+
+        int length = value < 0 ? stringSize(-value) + 1 : stringSize(value);
+        ensureCapacity(length);
+        int pos = count + length;
+        long remaining = value < 0 ? -value : value;
+        do {
+            buf[--pos] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) {
+            buf[--pos] = '-';
+        }
+        count += length;
+    }
+
+    /**
+     * Writes text that is known to be plain ASCII and to need no escaping, such as numbers.
+     */
+    void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped JSON string.
+     * <p>
+     * Runs of printable ASCII are copied into the buffer as they are, the other characters are encoded one at a time.
+     */
+    void writeString(String value) {
+        int length = value.length();
+        ensureCapacity(length + 2);
+        buf[count++] = '"';
+        int i = 0;
+        while (true) {
+            byte[] bytes = buf;
+            int pos = count;
+            for (char c; i < length && (c = value.charAt(i)) < 0x80 && !NEEDS_ESCAPE[c]; i++) {
+                bytes[pos++] = (byte) c;
+            }
+            count = pos;
+            if (i == length) {
+                break;
+            }
+            i = writeChar(value, i, length);
+            // Room for the rest of the string if it is plain ASCII, and for the closing quote
+            ensureCapacity(length - i + 1);
+        }
+        buf[count++] = '"';
+    }
+
+    /**
+     * Writes UTF-8 text as a quoted and escaped JSON string without decoding it, with the same result as writing
+     * {@code new String(bytes, offset, length, UTF_8)}.
+     * <p>
+     * Runs of printable ASCII and well-formed multibyte sequences are copied as they are. Malformed input and the
+     * line separators that are escaped, both rare in practice, are decoded and written as a {@code String} instead.
+     */
+    void writeUtf8String(byte[] bytes, int offset, int length) {
+        int start = count;
+        ensureCapacity(length + 2);
+        buf[count++] = '"';
+        int end = offset + length;
+        int i = offset;
+        while (true) {
+            int run = i;
+            // Bytes of multibyte sequences are negative, so this only lets printable ASCII through
+            while (i < end && bytes[i] >= 0x20 && bytes[i] != '"' && bytes[i] != '\\') {
+                i++;
+            }
+            System.arraycopy(bytes, run, buf, count, i - run);
+            count += i - run;
+            if (i == end) {
+                break;
+            }
+
+            int b = bytes[i];
+            if (b >= 0) {
+                writeEscaped((char) b);
+                i++;
+            } else {
+                int sequence = sequenceLength(bytes, i, end);
+                if (sequence == 0) {
+                    count = start;
+                    writeString(new String(bytes, offset, length, StandardCharsets.UTF_8));
+                    return;
+                }
+                System.arraycopy(bytes, i, buf, count, sequence);
+                count += sequence;
+                i += sequence;
+            }
+            ensureCapacity(end - i + 1);
+        }
+        buf[count++] = '"';
+    }
+
+    /**
+     * Copies compact JSON produced by another serializer, such as Jackson in the {@code JsonConverter}, with its
+     * strings escaped again like {@link #writeString(String)} so that the payload does not depend on which
+     * serializer encoded a value.
+     * <p>
+     * Everything outside of strings is copied as it is. Strings without escapes are copied like
+     * {@link #writeUtf8String(byte[], int, int)}, the others are unescaped first.
+     */
+    void writeJson(byte[] json) {
+        int i = 0;
+        while (i < json.length) {
+            int run = i;
+            while (i < json.length && json[i] != '"') {
+                i++;
+            }
+            writeBytes(json, run, i - run);
+            if (i == json.length) {
+                break;
+            }
+
+            int start = ++i;
+            boolean escaped = false;
+            while (json[i] != '"') {
+                if (json[i] == '\\') {
+                    escaped = true;
+                    i++;
+                }
+                i++;
+            }
+            if (escaped) {
+                writeString(unescape(json, start, i));
+            } else {
+                writeUtf8String(json, start, i - start);
+            }
+            i++;
+        }
+    }
+
+    private static String unescape(byte[] json, int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            int run = i;
+            while (i < end && json[i] != '\\') {
+                i++;
+            }
+            value.append(new String(json, run, i - run, StandardCharsets.UTF_8));
+            if (i == end) {
+                break;
+            }
+
+            char c = (char) json[i + 1];
+            switch (c) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(new String(json, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default:
+                    // Quote, backslash and slash stand for themselves
+                    value.append(c);
+            }
+            i += 2;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Encodes a JSON object member name, including quotes and the trailing colon, so it can be written once per
+     * record with {@link #writeBytes(byte[])}.
+     */
+    static byte[] encodeName(String name) {
+        JsonBuffer buffer = new JsonBuffer(name.length() + 3);
+        buffer.writeString(name);
+        buffer.writeByte(':');
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes the character at an index that is not printable ASCII.
+     *
+     * @return the index of the next character.
+     */
+    private int writeChar(String value, int i, int length) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            writeEscaped(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buf[count++] = (byte) (0xc0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (c == '\u2028' || c == '\u2029') {
+            writeUnicodeEscape(c);
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buf[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                // Same replacement as String#getBytes for malformed input
+                writeByte('?');
+            }
+        } else {
+            ensureCapacity(3);
+            buf[count++] = (byte) (0xe0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return i + 1;
+    }
+
+    /**
+     * @return the length of the well-formed UTF-8 sequence of a non-ASCII character at an index, or 0 if it is
+     * malformed or encodes a line separator that must be escaped.
+     */
+    private static int sequenceLength(byte[] bytes, int i, int end) {
+        int lead = bytes[i] & 0xff;
+        if (lead >= 0xc2 && lead <= 0xdf) {
+            return i + 1 < end && isContinuation(bytes[i + 1]) ? 2 : 0;
+        }
+        if (lead >= 0xe0 && lead <= 0xef) {
+            if (i + 2 >= end || !isContinuation(bytes[i + 1]) || !isContinuation(bytes[i + 2])) {
+                return 0;
+            }
+            int second = bytes[i + 1] & 0xff;
+            if ((lead == 0xe0 && second < 0xa0) || (lead == 0xed && second > 0x9f)) {
+                // Overlong encoding or surrogate
+                return 0;
+            }
+            // U+2028 and U+2029
+            return lead == 0xe2 && second == 0x80 && (bytes[i + 2] & 0xfe) == 0xa8 ? 0 : 3;
+        }
+        if (lead >= 0xf0 && lead <= 0xf4) {
+            if (i + 3 >= end || !isContinuation(bytes[i + 1]) || !isContinuation(bytes[i + 2])
+                    || !isContinuation(bytes[i + 3])) {
+                return 0;
+            }
+            int second = bytes[i + 1] & 0xff;
+            return (lead == 0xf0 && second < 0x90) || (lead == 0xf4 && second > 0x8f) ? 0 : 4;
+        }
+        return 0;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xc0) == 0x80;
+    }
+
+    private void writeEscaped(char c) {
+        switch (c) {
+            case '"':
+                writeByte('\\');
+                writeByte('"');
+                break;
+            case '\\':
+                writeByte('\\');
+                writeByte('\\');
+                break;
+            case '\t':
+                writeByte('\\');
+                writeByte('t');
+                break;
+            case '\b':
+                writeByte('\\');
+                writeByte('b');
+                break;
+            case '\n':
+                writeByte('\\');
+                writeByte('n');
+                break;
+            case '\r':
+                writeByte('\\');
+                writeByte('r');
+                break;
+            case '\f':
+                writeByte('\\');
+                writeByte('f');
+                break;
+            default:
+                writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) {
+        ensureCapacity(6);
+        buf[count++] = '\\';
+        buf[count++] = 'u';
+        buf[count++] = HEX[(c >> 12) & 0xf];
+        buf[count++] = HEX[(c >> 8) & 0xf];
+        buf[count++] = HEX[(c >> 4) & 0xf];
+        buf[count++] = HEX[c & 0xf];
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = count + extra;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(required, buf.length << 1));
+        }
+    }
+
+    private static int stringSize(long value) {
+        long p = 10;
+        for (int i = 1; i < 19; i++) {
+            if (value < p) {
+                return i;
+            }
+            p = 10 * p;
+        }
+        return 19;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Pre-aggregates the records of some topics into metrics: a count of records and, for each numeric value field, the
+ * average, minimum, maximum and percentiles of its values, per topic and combination of tag field values.
+ * <p>
+ * Records are aggregated into fixed windows of processing time. Once a window has ended, its series are encoded as
+ * a payload of the Datadog metrics API, timestamped at the start of the window. Percentiles come from a histogram
+ * with logarithmic buckets that keeps them within 1% of the exact values; values at or below zero are counted as
+ * zero in them. Infinite and NaN values are not counted, as they have no bucket and no JSON representation.
+ * <p>
+ * Windows are also closed when the task stops or its partitions are revoked, and the payloads that cannot be sent
+ * are kept for the next write, up to a few windows. Tag sets beyond the maximum number of series of a window are
+ * counted together in one series tagged {@code aggregation:overflow}.
+ * <p>
+ * Records that Kafka Connect redelivers after a failed put are not counted again: the highest offset counted is kept
+ * per partition until the partition is closed or opened. Whether a record is also sent as a log only depends on its
+ * coordinates, so that a redelivered record is sampled the same way.
+ */
+final class LogMetricAggregator {
+    private static final Logger log = LoggerFactory.getLogger(LogMetricAggregator.class);
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private static final String[] PERCENTILE_SUFFIXES = {".p50", ".p95", ".p99"};
+    private static final int MAX_UNSENT_PAYLOADS = 10;
+    private static final TagSet OVERFLOW = new TagSet(new String[0]);
+
+    private final Set<String> topics;
+    private final String metricPrefix;
+    private final List<String> tagFields;
+    private final List<String> valueFields;
+    private final long windowMs;
+    private final double rawSampleRate;
+    private final int maxSeries;
+    private final LongSupplier clock;
+    // Insertion ordered, so that series are sent in the order they first appeared
+    private final Map<TagSet, Series> series = new LinkedHashMap<>();
+    private final Deque<byte[]> unsent = new ArrayDeque<>();
+    private final Map<TopicPartition, Long> countedOffsets = new HashMap<>();
+    private long windowStart;
+
+    LogMetricAggregator(List<String> topics, String metricPrefix, List<String> tagFields, List<String> valueFields,
+                        long windowMs, double rawSampleRate, int maxSeries, LongSupplier clock) {
+        this.topics = new HashSet<>(topics);
+        this.metricPrefix = metricPrefix;
+        this.tagFields = tagFields;
+        this.valueFields = valueFields;
+        this.windowMs = windowMs;
+        this.rawSampleRate = rawSampleRate;
+        this.maxSeries = maxSeries;
+        this.clock = clock;
+        this.windowStart = windowStart(clock.getAsLong());
+    }
+
+    /**
+     * @return an aggregator for the config, or {@code null} when no topic is aggregated.
+     */
+    static LogMetricAggregator of(DatadogLogsSinkConnectorConfig config) {
+        if (config.aggregationTopics.isEmpty()) {
+            return null;
+        }
+        return new LogMetricAggregator(config.aggregationTopics, config.aggregationMetricPrefix,
+                config.aggregationTagFields, config.aggregationValueFields, config.aggregationWindowMs,
+                config.aggregationRawSampleRate, config.aggregationMaxSeries, System::currentTimeMillis);
+    }
+
+    boolean covers(String topic) {
+        return topics.contains(topic);
+    }
+
+    /**
+     * Counts a record of an aggregated topic in the current window.
+     *
+     * @return whether the record is also sent as a log.
+     */
+    boolean add(SinkRecord record) {
+        boolean sampled = rawSampleRate >= 1 || (rawSampleRate > 0 && sample(record) < rawSampleRate);
+        TopicPartition partition = new TopicPartition(record.topic(), record.kafkaPartition());
+        Long counted = countedOffsets.get(partition);
+        if (counted != null && record.kafkaOffset() <= counted) {
+            return sampled;
+        }
+        countedOffsets.put(partition, record.kafkaOffset());
+
+        Object value = record.value();
+        String[] tags = new String[tagFields.size() + 1];
+        tags[0] = record.topic();
+        for (int i = 0; i < tagFields.size(); i++) {
+            Object tag = RecordFields.get(value, tagFields.get(i));
+            tags[i + 1] = tag != null ? RecordFields.text(tag) : null;
+        }
+
+        TagSet tagSet = new TagSet(tags);
+        Series current = series.get(tagSet);
+        if (current == null) {
+            Series overflow = series.get(OVERFLOW);
+            if (series.size() - (overflow != null ? 1 : 0) >= maxSeries) {
+                if (overflow == null) {
+                    log.warn("Aggregated records have more than {} tag sets in a window; counting the others as overflow",
+                            maxSeries);
+                }
+                tagSet = OVERFLOW;
+                current = overflow;
+            }
+            if (current == null) {
+                current = new Series(valueFields.size());
+                series.put(tagSet, current);
+            }
+        }
+        current.count++;
+        for (int i = 0; i < valueFields.size(); i++) {
+            Object field = RecordFields.get(value, valueFields.get(i));
+            if (field instanceof Number) {
+                double number = ((Number) field).doubleValue();
+                if (Double.isFinite(number)) {
+                    current.distribution(i).add(number);
+                }
+            }
+        }
+
+        return sampled;
+    }
+
+    /**
+     * Forgets the offsets counted for partitions that are assigned to or revoked from the task, as Kafka Connect
+     * then delivers their records from the committed offset, which covers those of the windows already flushed.
+     */
+    void reset(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            countedOffsets.remove(partition);
+        }
+    }
+
+    /**
+     * @return a number in [0, 1) that is uniformly distributed over records and the same for every delivery of a
+     * record.
+     */
+    private static double sample(SinkRecord record) {
+        long hash = record.topic().hashCode() * 0x9E3779B97F4A7C15L
+                + (long) record.kafkaPartition() * 0xC2B2AE3D27D4EB4FL + record.kafkaOffset();
+        // The finalizer of SplitMix64
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Closes the current window if it has ended.
+     *
+     * @return the payload of the series of the closed window, or {@code null} if it is still open or empty.
+     */
+    byte[] drain() {
+        long now = clock.getAsLong();
+        if (now < windowStart + windowMs) {
+            return null;
+        }
+        return close(windowStart, now);
+    }
+
+    /**
+     * Closes the current window before it ends. Its metrics are timestamped at the time of the flush, so that they
+     * do not overwrite those a later aggregator sends for the rest of the window.
+     *
+     * @return the payload of the series of the window, or {@code null} if it is empty.
+     */
+    byte[] flush() {
+        long now = clock.getAsLong();
+        return close(now, now);
+    }
+
+    /**
+     * Keeps a payload that could not be sent for the next attempt, dropping the oldest one when too many are kept.
+     */
+    void requeue(byte[] payload) {
+        if (unsent.size() >= MAX_UNSENT_PAYLOADS) {
+            unsent.pollFirst();
+            log.warn("Dropping aggregated metrics that could not be sent in the last {} attempts", MAX_UNSENT_PAYLOADS);
+        }
+        unsent.addLast(payload);
+    }
+
+    /**
+     * @return the oldest payload that could not be sent, removing it, or {@code null} if there is none.
+     */
+    byte[] takeUnsent() {
+        return unsent.pollFirst();
+    }
+
+    private byte[] close(long timestamp, long now) {
+        byte[] payload = series.isEmpty() ? null : encode(timestamp / 1000);
+        series.clear();
+        windowStart = windowStart(now);
+        return payload;
+    }
+
+    private long windowStart(long now) {
+        return now - now % windowMs;
+    }
+
+    private byte[] encode(long timestamp) {
+        JsonBuffer out = new JsonBuffer();
+        out.writeAscii("{\"series\":[");
+        boolean first = true;
+        for (Map.Entry<TagSet, Series> entry : series.entrySet()) {
+            byte[] tags = encodeTags(entry.getKey());
+            Series current = entry.getValue();
+            first = writeMetric(out, first, metricPrefix + ".count", "count", timestamp, current.count, tags);
+            for (int i = 0; i < valueFields.size(); i++) {
+                Distribution distribution = current.distributions[i];
+                if (distribution == null) {
+                    continue;
+                }
+                String name = metricPrefix + "." + valueFields.get(i);
+                first = writeMetric(out, first, name + ".avg", "gauge", timestamp, distribution.sum / distribution.count, tags);
+                first = writeMetric(out, first, name + ".min", "gauge", timestamp, distribution.min, tags);
+                first = writeMetric(out, first, name + ".max", "gauge", timestamp, distribution.max, tags);
+                for (int p = 0; p < PERCENTILES.length; p++) {
+                    first = writeMetric(out, first, name + PERCENTILE_SUFFIXES[p], "gauge", timestamp,
+                            distribution.percentile(PERCENTILES[p]), tags);
+                }
+            }
+        }
+        out.writeAscii("]}");
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a metric, unless its value is not finite, as the sum of finite values can overflow.
+     *
+     * @return whether the next metric is the first one of the payload.
+     */
+    private boolean writeMetric(JsonBuffer out, boolean first, String name, String type, long timestamp, double value,
+                                byte[] tags) {
+        if (!Double.isFinite(value)) {
+            return first;
+        }
+        if (!first) {
+            out.writeByte(',');
+        }
+        out.writeAscii("{\"metric\":");
+        out.writeString(name);
+        out.writeAscii(",\"type\":\"");
+        out.writeAscii(type);
+        out.writeAscii("\",\"interval\":");
+        out.writeLong(windowMs / 1000);
+        out.writeAscii(",\"points\":[[");
+        out.writeLong(timestamp);
+        out.writeByte(',');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.writeLong((long) value);
+        } else {
+            out.writeAscii(Double.toString(value));
+        }
+        out.writeAscii("]],\"tags\":");
+        out.writeBytes(tags);
+        out.writeByte('}');
+        return false;
+    }
+
+    private byte[] encodeTags(TagSet tagSet) {
+        JsonBuffer out = new JsonBuffer(64);
+        out.writeByte('[');
+        if (tagSet == OVERFLOW) {
+            out.writeString("aggregation:overflow");
+            out.writeByte(']');
+            return out.toByteArray();
+        }
+        out.writeString("topic:" + tagSet.values[0]);
+        for (int i = 0; i < tagFields.size(); i++) {
+            if (tagSet.values[i + 1] != null) {
+                out.writeByte(',');
+                out.writeString(tagFields.get(i) + ":" + tagSet.values[i + 1]);
+            }
+        }
+        out.writeByte(']');
+        return out.toByteArray();
+    }
+
+    private static final class TagSet {
+        private final String[] values;
+        private final int hash;
+
+        TagSet(String[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TagSet && Arrays.equals(values, ((TagSet) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Series {
+        private long count;
+        private final Distribution[] distributions;
+
+        Series(int valueFields) {
+            this.distributions = new Distribution[valueFields];
+        }
+
+        Distribution distribution(int index) {
+            if (distributions[index] == null) {
+                distributions[index] = new Distribution();
+            }
+            return distributions[index];
+        }
+    }
+
+    /**
+     * Values of a field with their exact count, sum and bounds, and a histogram of logarithmic buckets for
+     * percentiles.
+     */
+    private static final class Distribution {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long zeroCount;
+        // Counts of the buckets from index offset on
+        private long[] buckets;
+        private int offset;
+
+        void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (value <= 0) {
+                zeroCount++;
+                return;
+            }
+
+            int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+            if (buckets == null) {
+                buckets = new long[16];
+                offset = index;
+            } else if (index < offset) {
+                long[] grown = new long[buckets.length + offset - index];
+                System.arraycopy(buckets, 0, grown, offset - index, buckets.length);
+                buckets = grown;
+                offset = index;
+            } else if (index - offset >= buckets.length) {
+                buckets = Arrays.copyOf(buckets, Math.max(index - offset + 1, buckets.length * 2));
+            }
+            buckets[index - offset]++;
+        }
+
+        double percentile(double quantile) {
+            long rank = (long) (quantile * (count - 1));
+            if (rank < zeroCount) {
+                return Math.max(min, 0);
+            }
+            long seen = zeroCount;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen > rank) {
+                    double value = 2 * Math.pow(GAMMA, i + offset) / (GAMMA + 1);
+                    return Math.min(Math.max(value, min), max);
+                }
+            }
+            return max;
+        }
+    }
+}
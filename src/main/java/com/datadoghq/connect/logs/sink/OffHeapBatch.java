@@ -0,0 +1,107 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JSON entries of a pending batch, encoded as records are added and held in slabs of a {@link DirectSlabPool}
+ * until the batch is sent.
+ */
+final class OffHeapBatch {
+    private final DirectSlabPool pool;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private long size;
+    private int entries;
+
+    OffHeapBatch(DirectSlabPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Appends encoded entries, separated by commas, preceded by a separator if they are not the first ones.
+     *
+     * @param count the number of entries in the buffer.
+     * @return {@code false}, leaving the batch unchanged, if the pool has no room left for the entries.
+     */
+    boolean append(JsonBuffer entry, int count) {
+        if (count == 0) {
+            return true;
+        }
+        int separator = entries > 0 ? 1 : 0;
+        ByteBuffer last = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        long room = (last != null ? last.remaining() : 0) + pool.available();
+        if (entry.size() + separator > room) {
+            return false;
+        }
+
+        if (separator > 0) {
+            slab().put((byte) ',');
+        }
+        int offset = 0;
+        while (offset < entry.size()) {
+            offset += entry.copyTo(slab(), offset);
+        }
+        size += entry.size() + separator;
+        entries += count;
+        return true;
+    }
+
+    private ByteBuffer slab() {
+        ByteBuffer last = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (last == null || !last.hasRemaining()) {
+            last = pool.acquire();
+            slabs.add(last);
+        }
+        return last;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * @return the size of the JSON array of the entries.
+     */
+    long size() {
+        return size + 2;
+    }
+
+    /**
+     * Writes the entries as a JSON array, copying them through a heap buffer of the caller.
+     */
+    void writeTo(OutputStream out, byte[] scratch) throws IOException {
+        out.write('[');
+        for (ByteBuffer slab : slabs) {
+            ByteBuffer content = slab.duplicate();
+            // Through Buffer, as ByteBuffer only overrides flip() from Java 9 on
+            ((Buffer) content).flip();
+            while (content.hasRemaining()) {
+                int length = Math.min(scratch.length, content.remaining());
+                content.get(scratch, 0, length);
+                out.write(scratch, 0, length);
+            }
+        }
+        out.write(']');
+    }
+
+    /**
+     * Returns the slabs to the pool. The batch must not be used afterwards.
+     */
+    void release() {
+        for (ByteBuffer slab : slabs) {
+            pool.release(slab);
+        }
+        slabs.clear();
+        size = 0;
+        entries = 0;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes the entries of a batch in chunks on a shared fork-join pool.
+ * <p>
+ * Each chunk is encoded into its own segment, which records where every entry ends so that the caller can join the
+ * segments in the original order of the entries and still cut the payload between any two of them. Records
+ * therefore keep their order within partitions.
+ */
+final class ParallelEncoder {
+    private final int chunkSize;
+
+    ParallelEncoder(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return an encoder for the config, or {@code null} when entries are encoded on the task thread.
+     */
+    static ParallelEncoder of(DatadogLogsSinkConnectorConfig config) {
+        if (!config.parallelEncoding) {
+            return null;
+        }
+        return new ParallelEncoder(config.parallelEncodingChunkSize);
+    }
+
+    /**
+     * @return whether a block of entries is large enough to be split into at least two chunks.
+     */
+    boolean splits(int entries) {
+        return entries >= 2 * chunkSize;
+    }
+
+    /**
+     * Encodes entries without separators, one segment per chunk, and waits for all of them.
+     *
+     * @return the segments in the order of the entries.
+     */
+    Segment[] encode(List<EntryCursor.Entry> entries, EntryFormatter formatter) {
+        Segment[] segments = new Segment[(entries.size() + chunkSize - 1) / chunkSize];
+        Workers.POOL.invoke(new EncodeTask(entries, formatter, segments, 0, segments.length));
+        return segments;
+    }
+
+    interface EntryFormatter {
+        void format(EntryCursor.Entry entry, JsonBuffer out);
+    }
+
+    /**
+     * The encoded entries of a chunk.
+     */
+    static final class Segment {
+        final JsonBuffer content;
+        // The offset in the content where each entry ends
+        final int[] ends;
+
+        private Segment(JsonBuffer content, int[] ends) {
+            this.content = content;
+            this.ends = ends;
+        }
+    }
+
+    private final class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<EntryCursor.Entry> entries;
+        private final EntryFormatter formatter;
+        private final Segment[] segments;
+        private final int fromChunk;
+        private final int toChunk;
+
+        EncodeTask(List<EntryCursor.Entry> entries, EntryFormatter formatter, Segment[] segments, int fromChunk, int toChunk) {
+            this.entries = entries;
+            this.formatter = formatter;
+            this.segments = segments;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new EncodeTask(entries, formatter, segments, fromChunk, middle),
+                        new EncodeTask(entries, formatter, segments, middle, toChunk));
+                return;
+            }
+
+            int from = fromChunk * chunkSize;
+            int to = Math.min(from + chunkSize, entries.size());
+            JsonBuffer content = new JsonBuffer();
+            int[] ends = new int[to - from];
+            for (int i = from; i < to; i++) {
+                formatter.format(entries.get(i), content);
+                ends[i - from] = content.size();
+            }
+            segments[fromChunk] = new Segment(content, ends);
+        }
+    }
+
+    // Lazily started the first time a batch is encoded in parallel
+    private static final class Workers {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+        static final ForkJoinPool POOL = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("datadog-logs-encoding-" + threadCount.incrementAndGet());
+                    return thread;
+                },
+                null,
+                false);
+    }
+}
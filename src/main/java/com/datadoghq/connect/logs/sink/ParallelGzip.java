@@ -0,0 +1,127 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression that deflates independent blocks of the input on a shared worker pool, in the way pigz does.
+ * <p>
+ * Every block but the last ends with a sync flush so the raw deflate streams can be concatenated byte-aligned, and
+ * each block is primed with the last 32KiB of the previous one as a dictionary to keep the compression ratio close
+ * to a single-threaded stream. The result is one regular gzip member.
+ */
+final class ParallelGzip {
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private ParallelGzip() {
+    }
+
+    static byte[] compress(byte[] input, int length, int blockSize) throws IOException {
+        return compress(Workers.POOL, input, length, blockSize);
+    }
+
+    /**
+     * @param executor the executor that deflates the blocks, such as the one of a {@link SharedSenderRuntime}.
+     */
+    static byte[] compress(ExecutorService executor, byte[] input, int length, int blockSize) throws IOException {
+        List<Future<byte[]>> blocks = new ArrayList<>(length / blockSize + 1);
+        for (int offset = 0; offset < length; offset += blockSize) {
+            final int start = offset;
+            final int end = Math.min(offset + blockSize, length);
+            blocks.add(executor.submit(() -> deflateBlock(input, start, end, end == length)));
+        }
+
+        // Checksum the input while the workers deflate it
+        CRC32 crc = new CRC32();
+        crc.update(input, 0, length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + HEADER.length + 8);
+        out.write(HEADER);
+        try {
+            if (blocks.isEmpty()) {
+                out.write(deflateBlock(input, 0, 0, true));
+            }
+            for (Future<byte[]> block : blocks) {
+                out.write(block.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<byte[]> block : blocks) {
+                block.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing payload");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress payload", e.getCause());
+        }
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out, length);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] deflateBlock(byte[] input, int start, int end, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (start > 0) {
+                int dictionaryLength = Math.min(DICTIONARY_SIZE, start);
+                deflater.setDictionary(input, start - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(input, start, end - start);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) / 2 + 64);
+            byte[] chunk = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(chunk);
+                    out.write(chunk, 0, written);
+                }
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    out.write(chunk, 0, written);
+                } while (written == chunk.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    // Lazily started the first time a payload is large enough to be compressed in parallel
+    private static final class Workers {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+        static final ExecutorService POOL = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "datadog-logs-compression-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
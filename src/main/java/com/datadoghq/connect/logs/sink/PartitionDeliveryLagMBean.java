@@ -0,0 +1,27 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+/**
+ * JMX view of the delay between the Kafka timestamp of the records of a partition and the moment the Datadog Logs
+ * API acknowledged them. Percentiles and the maximum cover the records acknowledged in the last one to two minutes, so
+ * they drop to 0 once a partition has been idle for two minutes.
+ */
+public interface PartitionDeliveryLagMBean {
+    long getCount();
+
+    long getP50Ms();
+
+    long getP90Ms();
+
+    long getP99Ms();
+
+    long getMaxMs();
+
+    long getLastAcknowledgedOffset();
+
+    long getLastAcknowledgedTimestamp();
+}
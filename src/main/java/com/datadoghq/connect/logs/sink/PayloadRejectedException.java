@@ -0,0 +1,36 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Datadog Logs API rejects the content of a request, so that sending the same payload again cannot
+ * succeed.
+ */
+class PayloadRejectedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    PayloadRejectedException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * Client errors are caused by the payload, except for authentication, timeout and rate limiting errors which do
+     * not depend on it.
+     */
+    static boolean isPayloadRejection(int status) {
+        return status >= 400 && status < 500
+                && status != 401 && status != 403 && status != 408 && status != 429;
+    }
+}
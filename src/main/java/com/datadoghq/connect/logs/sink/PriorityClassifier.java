@@ -0,0 +1,77 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorts records into the priority lane or the bulk lane by the value of a top-level field of the record value or of
+ * a header, such as {@code level} or {@code status}. Values are compared case-insensitively.
+ */
+final class PriorityClassifier {
+    private final String field;
+    private final String header;
+    private final Set<String> values;
+
+    PriorityClassifier(String field, String header, List<String> values) {
+        this.field = field;
+        this.header = header;
+        this.values = new HashSet<>();
+        for (String value : values) {
+            this.values.add(value.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * @return a classifier for the config, or {@code null} when priority lanes are not enabled.
+     */
+    static PriorityClassifier of(DatadogLogsSinkConnectorConfig config) {
+        if (config.priorityField == null && config.priorityHeader == null) {
+            return null;
+        }
+        return new PriorityClassifier(config.priorityField, config.priorityHeader, config.priorityValues);
+    }
+
+    boolean isPriority(SinkRecord record) {
+        if (header != null) {
+            Header value = record.headers().lastWithName(header);
+            if (value != null && matches(value.value())) {
+                return true;
+            }
+        }
+        return field != null && matches(fieldValue(record.value()));
+    }
+
+    private Object fieldValue(Object value) {
+        if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            Field schemaField = struct.schema().field(field);
+            return schemaField != null ? struct.get(schemaField) : null;
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).get(field);
+        }
+        return null;
+    }
+
+    private boolean matches(Object value) {
+        if (value == null) {
+            return false;
+        }
+        String text = value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+        return values.contains(text.toLowerCase(Locale.ROOT));
+    }
+}
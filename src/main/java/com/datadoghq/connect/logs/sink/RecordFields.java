@@ -0,0 +1,43 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Reads top-level fields of record values, whether they are structs or schemaless maps.
+ */
+final class RecordFields {
+
+    private RecordFields() {
+    }
+
+    /**
+     * @return the value of a field, or {@code null} if the value has no such field or is neither a struct nor a map.
+     */
+    static Object get(Object value, String field) {
+        if (value instanceof Struct) {
+            Struct struct = (Struct) value;
+            Field schemaField = struct.schema().field(field);
+            return schemaField != null ? struct.get(schemaField) : null;
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).get(field);
+        }
+        return null;
+    }
+
+    /**
+     * @return a field, header or key value as text, decoding bytes as UTF-8.
+     */
+    static String text(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+    }
+}
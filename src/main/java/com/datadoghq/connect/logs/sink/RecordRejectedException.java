@@ -0,0 +1,20 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.errors.DataException;
+
+/**
+ * Thrown when the Datadog Logs API rejects a record that cannot be reported, so that the task fails instead of
+ * retrying a write that would be rejected the same way.
+ */
+class RecordRejectedException extends DataException {
+    private static final long serialVersionUID = 1L;
+
+    RecordRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
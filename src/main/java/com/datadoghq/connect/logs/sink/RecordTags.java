@@ -0,0 +1,182 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.header.Header;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes the {@code ddtags} field of entries: the topic, the static {@code datadog.tags} and the tags extracted
+ * from the headers, key or value fields of each record by {@code datadog.tags.dynamic}. Commas in extracted values
+ * are replaced by underscores, as they would otherwise separate them into several tags.
+ * <p>
+ * Encoded fields are interned, so that records with a common combination of tag values share the same bytes instead
+ * of building the tags string again. Without dynamic tags, there is one field per topic. With them, the fields are
+ * kept in a bounded cache keyed by topic and extracted values, and values of a higher cardinality than it holds
+ * are encoded per record. The workers of a {@link ParallelEncoder} share it without locking on hits.
+ */
+final class RecordTags {
+    static final String KEY_SOURCE = "key";
+    static final String HEADER_SOURCE = "header:";
+    static final String FIELD_SOURCE = "field:";
+    private static final byte[] DDTAGS_FIELD = ",\"ddtags\":".getBytes(StandardCharsets.UTF_8);
+
+    private final String staticTags;
+    private final List<Extractor> extractors;
+    private final Map<String, byte[]> topicFields = new ConcurrentHashMap<>();
+    private final BoundedCache<TagKey, byte[]> fields;
+
+    RecordTags(String staticTags, List<String> dynamicTags, int maxSize) {
+        this.staticTags = staticTags;
+        this.extractors = parse(dynamicTags);
+        this.fields = new BoundedCache<>(maxSize);
+    }
+
+    static RecordTags of(DatadogLogsSinkConnectorConfig config) {
+        return new RecordTags(config.ddTags, config.ddDynamicTags, config.ddDynamicTagsCacheSize);
+    }
+
+    /**
+     * Parses tag extractors given as {@code <tag>=key}, {@code <tag>=header:<name>} or {@code <tag>=field:<name>}.
+     *
+     * @throws ConfigException if an extractor is malformed.
+     */
+    static List<Extractor> parse(List<String> dynamicTags) {
+        List<Extractor> extractors = new ArrayList<>(dynamicTags.size());
+        for (String spec : dynamicTags) {
+            int separator = spec.indexOf('=');
+            String tag = separator > 0 ? spec.substring(0, separator).trim() : "";
+            String source = separator > 0 ? spec.substring(separator + 1).trim() : "";
+            if (tag.isEmpty()) {
+                throw new ConfigException(DatadogLogsSinkConnectorConfig.DD_DYNAMIC_TAGS, spec,
+                        "Dynamic tags must be given as <tag>=<source>");
+            }
+            if (tag.indexOf(',') >= 0 || tag.indexOf(':') >= 0) {
+                throw new ConfigException(DatadogLogsSinkConnectorConfig.DD_DYNAMIC_TAGS, spec,
+                        "The name of a dynamic tag cannot contain ',' or ':'");
+            }
+
+            if (source.equals(KEY_SOURCE)) {
+                extractors.add(new Extractor(tag, null, null));
+            } else if (source.startsWith(HEADER_SOURCE) && source.length() > HEADER_SOURCE.length()) {
+                extractors.add(new Extractor(tag, source.substring(HEADER_SOURCE.length()), null));
+            } else if (source.startsWith(FIELD_SOURCE) && source.length() > FIELD_SOURCE.length()) {
+                extractors.add(new Extractor(tag, null, source.substring(FIELD_SOURCE.length())));
+            } else {
+                throw new ConfigException(DatadogLogsSinkConnectorConfig.DD_DYNAMIC_TAGS, spec,
+                        "The source of a dynamic tag must be key, header:<name> or field:<name>");
+            }
+        }
+        return extractors;
+    }
+
+    /**
+     * @return the encoded {@code ddtags} member of the entries of a record, including its leading comma.
+     */
+    byte[] field(SinkRecord record) {
+        if (extractors.isEmpty()) {
+            return topicFields.computeIfAbsent(record.topic(), topic -> encode(topic, null));
+        }
+
+        String[] values = new String[extractors.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = extractors.get(i).extract(record);
+        }
+        TagKey key = new TagKey(record.topic(), values);
+        byte[] field = fields.get(key);
+        return field != null ? field : fields.put(key, encode(record.topic(), values));
+    }
+
+    int size() {
+        return fields.size();
+    }
+
+    private byte[] encode(String topic, String[] values) {
+        StringBuilder tags = new StringBuilder("topic:").append(topic);
+        if (staticTags != null) {
+            tags.append(',').append(staticTags);
+        }
+        if (values != null) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    tags.append(',').append(extractors.get(i).tag).append(':').append(values[i]);
+                }
+            }
+        }
+
+        JsonBuffer field = new JsonBuffer(tags.length() + 16);
+        field.writeBytes(DDTAGS_FIELD);
+        field.writeString(tags.toString());
+        return field.toByteArray();
+    }
+
+    static final class Extractor {
+        private final String tag;
+        private final String header;
+        private final String field;
+
+        private Extractor(String tag, String header, String field) {
+            this.tag = tag;
+            this.header = header;
+            this.field = field;
+        }
+
+        /**
+         * @return the value of the tag for a record, or {@code null} if it has none.
+         */
+        String extract(SinkRecord record) {
+            Object value;
+            if (header != null) {
+                Header last = record.headers().lastWithName(header);
+                value = last != null ? last.value() : null;
+            } else if (field != null) {
+                value = RecordFields.get(record.value(), field);
+            } else {
+                value = record.key();
+            }
+
+            if (value == null) {
+                return null;
+            }
+            String text = RecordFields.text(value).replace(',', '_');
+            return text.isEmpty() ? null : text;
+        }
+    }
+
+    private static final class TagKey {
+        private final String topic;
+        private final String[] values;
+        private final int hash;
+
+        TagKey(String topic, String[] values) {
+            this.topic = topic;
+            this.values = values;
+            this.hash = 31 * topic.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TagKey)) {
+                return false;
+            }
+            TagKey other = (TagKey) o;
+            return topic.equals(other.topic) && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sends the requests of a task concurrently, up to {@code datadog.request.concurrency} at a time, on platform
+ * threads or, on Java 21 and above, on virtual threads. Requests of the priority lane have their own
+ * {@code datadog.priority.request_concurrency} permits, so that bulk requests in flight never hold them back.
+ */
+final class RequestExecutor {
+    private static final Logger log = LoggerFactory.getLogger(RequestExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Semaphore priorityPermits;
+
+    RequestExecutor(String name, int concurrency, int priorityConcurrency, boolean virtualThreads) {
+        this.executor = RequestThreads.newExecutor(name, virtualThreads);
+        this.permits = new Semaphore(concurrency);
+        this.priorityPermits = new Semaphore(priorityConcurrency);
+    }
+
+    /**
+     * @return an executor for the config, or {@code null} when requests are sent one at a time.
+     */
+    static RequestExecutor of(String name, DatadogLogsSinkConnectorConfig config) {
+        if (config.requestConcurrency <= 1) {
+            return null;
+        }
+
+        boolean virtualThreads = config.requestVirtualThreads && RequestThreads.virtualThreadsAvailable();
+        if (config.requestVirtualThreads && !virtualThreads) {
+            log.warn("Virtual threads require Java 21 or above; sending requests on platform threads instead");
+        }
+        log.info("Sending up to {} bulk and {} priority requests at a time on {} threads", config.requestConcurrency,
+                config.priorityRequestConcurrency, virtualThreads ? "virtual" : "platform");
+        return new RequestExecutor(name, config.requestConcurrency, config.priorityRequestConcurrency, virtualThreads);
+    }
+
+    /**
+     * Starts a request once fewer than the maximum number of requests of its lane are in flight.
+     */
+    Future<Void> submit(Request request, boolean priority) throws InterruptedIOException {
+        Semaphore permits = priority ? priorityPermits : this.permits;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        }
+
+        try {
+            return executor.submit(() -> {
+                try {
+                    request.send();
+                    return null;
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a request to complete.
+     *
+     * @throws IOException the failure of the request.
+     */
+    static void await(Future<Void> request) throws IOException {
+        try {
+            request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    interface Request {
+        void send() throws IOException;
+    }
+}
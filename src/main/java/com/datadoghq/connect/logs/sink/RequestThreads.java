@@ -0,0 +1,38 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads that requests in flight run on.
+ * <p>
+ * This is the implementation for runtimes without virtual threads, which always uses platform threads. The
+ * multi-release JAR replaces it on Java 21 and above with one that can run each request on its own virtual thread.
+ */
+final class RequestThreads {
+
+    private RequestThreads() {
+    }
+
+    static boolean virtualThreadsAvailable() {
+        return false;
+    }
+
+    /**
+     * @param virtualThreads ignored, as virtual threads are not available.
+     */
+    static ExecutorService newExecutor(String name, boolean virtualThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "datadog-logs-" + name + "-request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,213 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compressed payloads of batches that failed to be sent, kept so that a redelivery of the same records can resend
+ * them without converting, formatting and compressing them again.
+ * <p>
+ * Entries are keyed by the offset ranges of the records in the batch and the total size of the cached payloads is
+ * capped; the oldest entries are dropped first. Each routing destination has its own cache with its own cap, which is
+ * cleared and invalidated along with this one.
+ */
+final class RetryPayloadCache {
+    private final long maxBytes;
+    private final Map<BatchKey, byte[]> payloads = new LinkedHashMap<>();
+    private final Map<String, RetryPayloadCache> destinations = new HashMap<>();
+    private long bytes;
+
+    RetryPayloadCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return the cache of the payloads of a routing destination.
+     */
+    RetryPayloadCache forDestination(String name) {
+        return destinations.computeIfAbsent(name, destination -> new RetryPayloadCache(maxBytes));
+    }
+
+    /**
+     * Removes and returns the cached payload for a batch, if any.
+     */
+    byte[] take(BatchKey key) {
+        byte[] payload = payloads.remove(key);
+        if (payload != null) {
+            bytes -= payload.length;
+        }
+        return payload;
+    }
+
+    void put(BatchKey key, byte[] payload) {
+        if (payload.length > maxBytes) {
+            return;
+        }
+
+        take(key);
+        Iterator<byte[]> oldest = payloads.values().iterator();
+        while (bytes + payload.length > maxBytes && oldest.hasNext()) {
+            bytes -= oldest.next().length;
+            oldest.remove();
+        }
+        payloads.put(key, payload);
+        bytes += payload.length;
+    }
+
+    /**
+     * Drops the payloads of all batches that contain records of one of the given partitions.
+     */
+    void invalidate(Collection<TopicPartition> partitions) {
+        Iterator<Map.Entry<BatchKey, byte[]>> entries = payloads.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<BatchKey, byte[]> entry = entries.next();
+            for (TopicPartition partition : partitions) {
+                if (entry.getKey().contains(partition)) {
+                    bytes -= entry.getValue().length;
+                    entries.remove();
+                    break;
+                }
+            }
+        }
+        for (RetryPayloadCache destination : destinations.values()) {
+            destination.invalidate(partitions);
+        }
+    }
+
+    void clear() {
+        payloads.clear();
+        bytes = 0;
+        for (RetryPayloadCache destination : destinations.values()) {
+            destination.clear();
+        }
+    }
+
+    int size() {
+        return payloads.size();
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Identifies a batch by the first and last offset of each of its topic partitions and its record count.
+     */
+    static final class BatchKey {
+        private static final Comparator<TopicPartition> PARTITION_ORDER =
+                Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition);
+
+        private final String[] topics;
+        private final int[] partitions;
+        private final long[] firstOffsets;
+        private final long[] lastOffsets;
+        private final int count;
+
+        private BatchKey(String[] topics, int[] partitions, long[] firstOffsets, long[] lastOffsets, int count) {
+            this.topics = topics;
+            this.partitions = partitions;
+            this.firstOffsets = firstOffsets;
+            this.lastOffsets = lastOffsets;
+            this.count = count;
+        }
+
+        static BatchKey of(List<SinkRecord> records) {
+            Map<TopicPartition, long[]> ranges = new TreeMap<>(PARTITION_ORDER);
+            TopicPartition topicPartition = null;
+            for (SinkRecord record : records) {
+                if (topicPartition == null || topicPartition.partition() != record.kafkaPartition()
+                        || !topicPartition.topic().equals(record.topic())) {
+                    topicPartition = new TopicPartition(record.topic(), record.kafkaPartition());
+                }
+                long[] range = ranges.get(topicPartition);
+                if (range == null) {
+                    ranges.put(topicPartition, new long[]{record.kafkaOffset(), record.kafkaOffset()});
+                } else {
+                    range[0] = Math.min(range[0], record.kafkaOffset());
+                    range[1] = Math.max(range[1], record.kafkaOffset());
+                }
+            }
+
+            String[] topics = new String[ranges.size()];
+            int[] partitions = new int[ranges.size()];
+            long[] firstOffsets = new long[ranges.size()];
+            long[] lastOffsets = new long[ranges.size()];
+            int i = 0;
+            for (Map.Entry<TopicPartition, long[]> range : ranges.entrySet()) {
+                topics[i] = range.getKey().topic();
+                partitions[i] = range.getKey().partition();
+                firstOffsets[i] = range.getValue()[0];
+                lastOffsets[i] = range.getValue()[1];
+                i++;
+            }
+            return new BatchKey(topics, partitions, firstOffsets, lastOffsets, records.size());
+        }
+
+        boolean contains(TopicPartition partition) {
+            for (int i = 0; i < partitions.length; i++) {
+                if (partitions[i] == partition.partition() && topics[i].equals(partition.topic())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) o;
+            return count == other.count
+                    && Arrays.equals(topics, other.topics)
+                    && Arrays.equals(partitions, other.partitions)
+                    && Arrays.equals(firstOffsets, other.firstOffsets)
+                    && Arrays.equals(lastOffsets, other.lastOffsets);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(topics);
+            result = 31 * result + Arrays.hashCode(partitions);
+            result = 31 * result + Arrays.hashCode(firstOffsets);
+            result = 31 * result + Arrays.hashCode(lastOffsets);
+            return 31 * result + count;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < partitions.length; i++) {
+                if (i == 0 || !topics[i].equals(topics[i - 1])) {
+                    builder.append(i == 0 ? "" : "], ").append(topics[i]).append('[');
+                } else {
+                    builder.append(", ");
+                }
+                builder.append(partitions[i]).append(':').append(firstOffsets[i]).append('-').append(lastOffsets[i]);
+            }
+            return builder.append(partitions.length > 0 ? "]" : "[]").toString();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.DataException;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Encoder for values of one Connect {@link Schema}, compiled once and reused for every record that carries it.
+ * <p>
+ * The output matches what {@code JsonConverter} produces with {@code schemas.enable=false} and
+ * {@code decimal.format=NUMERIC}, without walking the schema or resolving logical type converters per value. A
+ * {@link FieldFilter} is applied at compile time where the schema allows it: fields it drops are not part of the
+ * compiled encoder at all.
+ */
+abstract class SchemaEncoder {
+    private final Schema schema;
+
+    private SchemaEncoder(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Encodes a value, applying the schema default and optionality rules for nulls.
+     */
+    final void encode(Object value, JsonBuffer out) {
+        if (value == null) {
+            if (schema.defaultValue() != null) {
+                value = schema.defaultValue();
+            } else if (schema.isOptional()) {
+                out.writeNull();
+                return;
+            } else {
+                throw new DataException("Conversion error: null value for field that is required and has no default value");
+            }
+        }
+
+        try {
+            encodeNonNull(value, out);
+        } catch (ClassCastException e) {
+            throw new DataException("Invalid type for " + schema.type() + ": " + value.getClass(), e);
+        }
+    }
+
+    abstract void encodeNonNull(Object value, JsonBuffer out);
+
+    static SchemaEncoder compile(Schema schema) {
+        return compile(schema, FieldFilter.NONE, "");
+    }
+
+    static SchemaEncoder compile(Schema schema, FieldFilter filter, String path) {
+        if (schema.name() != null) {
+            switch (schema.name()) {
+                case Decimal.LOGICAL_NAME:
+                    return new SchemaEncoder(schema) {
+                        @Override
+                        void encodeNonNull(Object value, JsonBuffer out) {
+                            out.writeAscii(((BigDecimal) value).toString());
+                        }
+                    };
+                case Date.LOGICAL_NAME:
+                    return new SchemaEncoder(schema) {
+                        @Override
+                        void encodeNonNull(Object value, JsonBuffer out) {
+                            out.writeLong(Date.fromLogical(schema, (java.util.Date) value));
+                        }
+                    };
+                case Time.LOGICAL_NAME:
+                    return new SchemaEncoder(schema) {
+                        @Override
+                        void encodeNonNull(Object value, JsonBuffer out) {
+                            out.writeLong(Time.fromLogical(schema, (java.util.Date) value));
+                        }
+                    };
+                case Timestamp.LOGICAL_NAME:
+                    return new SchemaEncoder(schema) {
+                        @Override
+                        void encodeNonNull(Object value, JsonBuffer out) {
+                            out.writeLong(Timestamp.fromLogical(schema, (java.util.Date) value));
+                        }
+                    };
+                default:
+                    break;
+            }
+        }
+
+        switch (schema.type()) {
+            case INT8:
+            case INT16:
+            case INT32:
+            case INT64:
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        out.writeLong(((Number) value).longValue());
+                    }
+                };
+            case FLOAT32:
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        float f = (Float) value;
+                        if (Float.isFinite(f)) {
+                            out.writeAscii(Float.toString(f));
+                        } else {
+                            out.writeString(Float.toString(f));
+                        }
+                    }
+                };
+            case FLOAT64:
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        double d = (Double) value;
+                        if (Double.isFinite(d)) {
+                            out.writeAscii(Double.toString(d));
+                        } else {
+                            out.writeString(Double.toString(d));
+                        }
+                    }
+                };
+            case BOOLEAN:
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        out.writeBoolean((Boolean) value);
+                    }
+                };
+            case STRING:
+                if (filter.transformsStrings()) {
+                    return new SchemaEncoder(schema) {
+                        @Override
+                        void encodeNonNull(Object value, JsonBuffer out) {
+                            out.writeString(filter.transform((String) value));
+                        }
+                    };
+                }
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        out.writeString((String) value);
+                    }
+                };
+            case BYTES:
+                return new SchemaEncoder(schema) {
+                    @Override
+                    void encodeNonNull(Object value, JsonBuffer out) {
+                        // Mirrors JsonConverter, which encodes the whole backing array of a ByteBuffer
+                        byte[] bytes = value instanceof ByteBuffer ? ((ByteBuffer) value).array() : (byte[]) value;
+                        out.writeByte('"');
+                        out.writeBytes(Base64.getEncoder().encode(bytes));
+                        out.writeByte('"');
+                    }
+                };
+            case ARRAY:
+                return new ArrayEncoder(schema, filter, path);
+            case MAP:
+                return new MapEncoder(schema, filter, path);
+            case STRUCT:
+                return new StructEncoder(schema, filter, path);
+            default:
+                throw new DataException("Couldn't convert " + schema + " to JSON.");
+        }
+    }
+
+    private static final class ArrayEncoder extends SchemaEncoder {
+        private final SchemaEncoder valueEncoder;
+
+        ArrayEncoder(Schema schema, FieldFilter filter, String path) {
+            super(schema);
+            this.valueEncoder = compile(schema.valueSchema(), filter, path);
+        }
+
+        @Override
+        void encodeNonNull(Object value, JsonBuffer out) {
+            out.writeByte('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                valueEncoder.encode(element, out);
+            }
+            out.writeByte(']');
+        }
+    }
+
+    private static final class MapEncoder extends SchemaEncoder {
+        private final boolean objectMode;
+        private final SchemaEncoder keyEncoder;
+        private final SchemaEncoder valueEncoder;
+        // Keys are only known per value, so their paths are checked while encoding
+        private final FieldFilter keyFilter;
+        private final String path;
+
+        MapEncoder(Schema schema, FieldFilter filter, String path) {
+            super(schema);
+            this.objectMode = schema.keySchema().type() == Schema.Type.STRING;
+            this.keyEncoder = compile(schema.keySchema());
+            this.valueEncoder = compile(schema.valueSchema(), filter, path);
+            this.keyFilter = objectMode && filter.projectsFields() ? filter : null;
+            this.path = path;
+        }
+
+        @Override
+        void encodeNonNull(Object value, JsonBuffer out) {
+            out.writeByte(objectMode ? '{' : '[');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (keyFilter != null && !keyFilter.selects(FieldFilter.childPath(path, (String) entry.getKey()))) {
+                    continue;
+                }
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                if (objectMode) {
+                    out.writeString((String) entry.getKey());
+                    out.writeByte(':');
+                    valueEncoder.encode(entry.getValue(), out);
+                } else {
+                    out.writeByte('[');
+                    keyEncoder.encode(entry.getKey(), out);
+                    out.writeByte(',');
+                    valueEncoder.encode(entry.getValue(), out);
+                    out.writeByte(']');
+                }
+            }
+            out.writeByte(objectMode ? '}' : ']');
+        }
+    }
+
+    private static final class StructEncoder extends SchemaEncoder {
+        private final Schema structSchema;
+        private final Field[] fields;
+        private final byte[][] names;
+        private final SchemaEncoder[] encoders;
+
+        StructEncoder(Schema schema, FieldFilter filter, String path) {
+            super(schema);
+            this.structSchema = schema;
+            List<Field> schemaFields = new ArrayList<>(schema.fields().size());
+            for (Field field : schema.fields()) {
+                if (filter.selects(FieldFilter.childPath(path, field.name()))) {
+                    schemaFields.add(field);
+                }
+            }
+            this.fields = schemaFields.toArray(new Field[0]);
+            this.names = new byte[fields.length][];
+            this.encoders = new SchemaEncoder[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                // Separator is part of the pre-encoded name so that each field costs a single copy
+                JsonBuffer name = new JsonBuffer(fields[i].name().length() + 4);
+                if (i > 0) {
+                    name.writeByte(',');
+                }
+                name.writeString(fields[i].name());
+                name.writeByte(':');
+                names[i] = name.toByteArray();
+                encoders[i] = compile(fields[i].schema(), filter, FieldFilter.childPath(path, fields[i].name()));
+            }
+        }
+
+        @Override
+        void encodeNonNull(Object value, JsonBuffer out) {
+            Struct struct = (Struct) value;
+            if (struct.schema() != structSchema && !struct.schema().equals(structSchema)) {
+                throw new DataException("Mismatching schema.");
+            }
+
+            out.writeByte('{');
+            for (int i = 0; i < fields.length; i++) {
+                out.writeBytes(names[i]);
+                encoders[i].encode(struct.get(fields[i]), out);
+            }
+            out.writeByte('}');
+        }
+    }
+
+    /**
+     * Encodes a value without a schema, applying a filter. Values other than maps, collections, strings, booleans and
+     * integers are left to the fallback, which is expected to encode them like {@code JsonConverter}.
+     */
+    static void encodeSchemaless(Object value, FieldFilter filter, String path, JsonBuffer out,
+                                 Function<Object, byte[]> fallback) {
+        if (value == null) {
+            out.writeNull();
+        } else if (value instanceof String) {
+            out.writeString(filter.transform((String) value));
+        } else if (value instanceof Boolean) {
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Collection) {
+            out.writeByte('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                encodeSchemaless(element, filter, path, out, fallback);
+            }
+            out.writeByte(']');
+        } else if (value instanceof Map && hasStringKeys((Map<?, ?>) value)) {
+            out.writeByte('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String childPath = FieldFilter.childPath(path, (String) entry.getKey());
+                if (!filter.selects(childPath)) {
+                    continue;
+                }
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                out.writeString((String) entry.getKey());
+                out.writeByte(':');
+                encodeSchemaless(entry.getValue(), filter, childPath, out, fallback);
+            }
+            out.writeByte('}');
+        } else {
+            out.writeJson(fallback.apply(value));
+        }
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
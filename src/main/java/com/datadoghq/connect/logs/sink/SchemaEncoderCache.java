@@ -0,0 +1,91 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.connect.data.Schema;
+
+/**
+ * Bounded cache of {@link SchemaEncoder}s keyed by {@link Schema} identity, then by equality.
+ * <p>
+ * Converters backed by a schema registry hand out the same {@code Schema} instance for every record of a given
+ * schema version, so an identity lookup avoids the deep {@code equals}/{@code hashCode} of {@code ConnectSchema}.
+ * Converters and transforms that build a new instance for every record miss it and find the encoder by equality
+ * instead; those instances are not added to the identity cache, which they would only churn. A new schema simply
+ * compiles a new encoder, and the least recently used ones are evicted on churn. The workers of a
+ * {@link ParallelEncoder} share the cache without locking on hits; the compiled encoders themselves are immutable.
+ */
+final class SchemaEncoderCache {
+    private final FieldFilter filter;
+    private final BoundedCache<SchemaKey, SchemaEncoder> encoders;
+    private final BoundedCache<Schema, SchemaEncoder> equalEncoders;
+    private volatile Compiled last;
+
+    SchemaEncoderCache(int maxSize) {
+        this(maxSize, FieldFilter.NONE);
+    }
+
+    SchemaEncoderCache(int maxSize, FieldFilter filter) {
+        this.filter = filter;
+        this.encoders = new BoundedCache<>(maxSize);
+        this.equalEncoders = new BoundedCache<>(maxSize);
+    }
+
+    SchemaEncoder get(Schema schema) {
+        // Consecutive records nearly always share a schema
+        Compiled compiled = last;
+        if (compiled != null && compiled.schema == schema) {
+            return compiled.encoder;
+        }
+
+        SchemaKey key = new SchemaKey(schema);
+        SchemaEncoder encoder = encoders.get(key);
+        if (encoder == null) {
+            encoder = equalEncoders.get(schema);
+            if (encoder == null) {
+                encoder = equalEncoders.put(schema, SchemaEncoder.compile(schema, filter, ""));
+                encoders.put(key, encoder);
+            }
+        }
+
+        last = new Compiled(schema, encoder);
+        return encoder;
+    }
+
+    /**
+     * @return the number of distinct schemas with a cached encoder.
+     */
+    int size() {
+        return equalEncoders.size();
+    }
+
+    private static final class Compiled {
+        private final Schema schema;
+        private final SchemaEncoder encoder;
+
+        Compiled(Schema schema, SchemaEncoder encoder) {
+            this.schema = schema;
+            this.encoder = encoder;
+        }
+    }
+
+    private static final class SchemaKey {
+        private final Schema schema;
+
+        SchemaKey(Schema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SchemaKey && ((SchemaKey) o).schema == schema;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(schema);
+        }
+    }
+}
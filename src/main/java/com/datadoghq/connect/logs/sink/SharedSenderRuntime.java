@@ -0,0 +1,107 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sending resources shared by the tasks of a connector that run in the same worker: a compression executor and a
+ * limit on the number of requests in flight to the Datadog Logs API across all of them.
+ * <p>
+ * Runtimes are reference counted. The first task of a connector to start creates it, and the last one to stop shuts
+ * its executor down. Connections are pooled per endpoint by the JDK keep-alive cache, which the in-flight limit keeps
+ * from being churned by more concurrent sockets than it holds.
+ */
+final class SharedSenderRuntime {
+    private static final Logger log = LoggerFactory.getLogger(SharedSenderRuntime.class);
+    private static final Map<String, SharedSenderRuntime> runtimes = new HashMap<>();
+
+    private final String name;
+    private final ExecutorService compressionExecutor;
+    private final Semaphore inFlightRequests;
+    private final int maxInFlightRequests;
+    private int references;
+
+    private SharedSenderRuntime(String name, int maxInFlightRequests) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.name = name;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests, true);
+        this.compressionExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "datadog-logs-" + name + "-compression-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns the runtime of a connector, creating it if no other task of the connector holds it. Every call must be
+     * paired with a {@link #release()}.
+     */
+    static SharedSenderRuntime acquire(String name, int maxInFlightRequests) {
+        synchronized (runtimes) {
+            SharedSenderRuntime runtime = runtimes.get(name);
+            if (runtime == null) {
+                log.info("Starting shared sender runtime for connector {} with {} requests in flight", name, maxInFlightRequests);
+                runtime = new SharedSenderRuntime(name, maxInFlightRequests);
+                runtimes.put(name, runtime);
+            } else if (runtime.maxInFlightRequests != maxInFlightRequests) {
+                log.warn("Shared sender runtime for connector {} keeps its limit of {} requests in flight until all its tasks stop",
+                        name, runtime.maxInFlightRequests);
+            }
+            runtime.references++;
+            return runtime;
+        }
+    }
+
+    void release() {
+        synchronized (runtimes) {
+            if (--references == 0) {
+                log.info("Stopping shared sender runtime for connector {}", name);
+                runtimes.remove(name);
+                compressionExecutor.shutdown();
+            }
+        }
+    }
+
+    ExecutorService compressionExecutor() {
+        return compressionExecutor;
+    }
+
+    /**
+     * Waits until fewer than the maximum number of requests are in flight. Every call must be paired with a
+     * {@link #endRequest()}.
+     */
+    void beginRequest() throws InterruptedIOException {
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        }
+    }
+
+    void endRequest() {
+        inFlightRequests.release();
+    }
+
+    int references() {
+        synchronized (runtimes) {
+            return references;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads that requests in flight run on.
+ * <p>
+ * This is the implementation for Java 21 and above, packaged in {@code META-INF/versions/21} of the multi-release
+ * JAR. Each request can run on its own virtual thread, which only holds a carrier thread while it is not blocked on
+ * the connection.
+ */
+final class RequestThreads {
+
+    private RequestThreads() {
+    }
+
+    static boolean virtualThreadsAvailable() {
+        return true;
+    }
+
+    static ExecutorService newExecutor(String name, boolean virtualThreads) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("datadog-logs-" + name + "-request-", 1).factory());
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "datadog-logs-" + name + "-request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,55 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs;
+
+import com.datadoghq.connect.logs.sink.DatadogLogsSinkConnectorConfig;
+import org.apache.kafka.common.config.Config;
+import org.apache.kafka.common.config.ConfigValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatadogLogsSinkConnectorTest {
+    private Map<String, String> props;
+
+    @Before
+    public void setUp() {
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        // Nothing listens on the discard port
+        props.put(DatadogLogsSinkConnectorConfig.DD_URL, "localhost:9");
+    }
+
+    @Test
+    public void validate_connectionValidationDisabled_shouldNotReportErrors() {
+        Config config = new DatadogLogsSinkConnector().validate(props);
+
+        assertTrue(configValue(config, DatadogLogsSinkConnectorConfig.DD_URL).errorMessages().isEmpty());
+    }
+
+    @Test
+    public void validate_unreachableEndpoint_shouldReportError() {
+        props.put(DatadogLogsSinkConnectorConfig.CONNECTION_VALIDATE, "true");
+        Config config = new DatadogLogsSinkConnector().validate(props);
+
+        assertEquals(1, configValue(config, DatadogLogsSinkConnectorConfig.DD_URL).errorMessages().size());
+        assertTrue(configValue(config, DatadogLogsSinkConnectorConfig.DD_API_KEY).errorMessages().isEmpty());
+    }
+
+    private ConfigValue configValue(Config config, String name) {
+        for (ConfigValue value : config.configValues()) {
+            if (value.name().equals(name)) {
+                return value;
+            }
+        }
+        throw new AssertionError("Missing config value " + name);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void put_beyondMaxSize_shouldEvictEntriesNotReadSinceAdded() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("first", "1");
+        cache.put("second", "2");
+        cache.get("first");
+        cache.put("third", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("first"));
+        assertNull(cache.get("second"));
+        assertEquals("3", cache.get("third"));
+    }
+
+    @Test
+    public void put_cachedKey_shouldKeepCachedValue() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        String value = new String("value");
+
+        assertSame(value, cache.put("key", value));
+        assertSame(value, cache.put("key", new String("value")));
+    }
+
+    @Test
+    public void get_whileAnEntryIsAdded_shouldNotWait() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<>(16);
+        cache.put("key", "value");
+        CountDownLatch read = new CountDownLatch(1);
+
+        // Holds the lock that additions take
+        synchronized (cache) {
+            Thread reader = new Thread(() -> {
+                if ("value".equals(cache.get("key"))) {
+                    read.countDown();
+                }
+            });
+            reader.start();
+            assertTrue(read.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void get_onSeveralThreads_shouldReadMoreEntriesThanOnOne() throws InterruptedException {
+        int workers = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+        Assume.assumeTrue(workers >= 2);
+        BoundedCache<Integer, String> cache = new BoundedCache<>(64);
+        for (int i = 0; i < 64; i++) {
+            cache.put(i, "value" + i);
+        }
+
+        // Best of a few rounds, to leave out warm-up and scheduling noise
+        long single = 0;
+        long parallel = 0;
+        for (int round = 0; round < 3; round++) {
+            single = Math.max(single, reads(cache, 1));
+            parallel = Math.max(parallel, reads(cache, workers));
+        }
+        assertTrue("1 worker: " + single + " reads, " + workers + " workers: " + parallel + " reads",
+                parallel > single * 1.5);
+    }
+
+    /**
+     * @return the number of entries the given number of threads read in 200ms.
+     */
+    private static long reads(BoundedCache<Integer, String> cache, int threads) throws InterruptedException {
+        AtomicLong total = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            readers[t] = new Thread(() -> {
+                long reads = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 64; i++) {
+                        if (cache.get(i) != null) {
+                            reads++;
+                        }
+                    }
+                }
+                total.addAndGet(reads);
+            });
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return total.get();
+    }
+}
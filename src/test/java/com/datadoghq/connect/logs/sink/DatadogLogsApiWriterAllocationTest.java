@@ -0,0 +1,142 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import com.datadoghq.connect.logs.sink.util.RestHelper;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Guards the memory efficiency of the writer: bytes allocated by the writing thread per record, for representative
+ * record shapes, must stay within budgets. Budgets leave room for JDK differences, a change that doubles the
+ * allocation of a shape fails them.
+ */
+public class DatadogLogsApiWriterAllocationTest {
+    private static final int RECORDS = 2000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final String LINE = "2020-06-01T12:00:00.000Z INFO [http-nio-8080-exec-1] c.e.OrderService - " +
+            "Order 12345 placed by customer 67890 with 3 items, total 99.95 USD, shipping to warehouse eu-west-1";
+    private static final Schema ORDER_SCHEMA = SchemaBuilder.struct()
+            .field("id", Schema.INT64_SCHEMA)
+            .field("customer", Schema.STRING_SCHEMA)
+            .field("status", Schema.STRING_SCHEMA)
+            .field("total", Schema.FLOAT64_SCHEMA)
+            .field("express", Schema.BOOLEAN_SCHEMA)
+            .field("message", Schema.STRING_SCHEMA)
+            .build();
+
+    private com.sun.management.ThreadMXBean threads;
+    private Map<String, String> props;
+    private RestHelper restHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "API_KEY");
+        props.put(DatadogLogsSinkConnectorConfig.DD_URL, "localhost:8080");
+        restHelper = new RestHelper();
+        restHelper.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (restHelper != null) {
+            restHelper.stop();
+        }
+    }
+
+    @Test
+    public void write_textValues_shouldStayWithinBudget() throws IOException {
+        assertWithinBudget("text", 1024, offset -> record(null, LINE + offset, offset));
+    }
+
+    @Test
+    public void write_bytesAsText_shouldStayWithinBudget() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.BYTES_AS_TEXT, "true");
+        assertWithinBudget("bytes", 1024,
+                offset -> record(null, (LINE + offset).getBytes(StandardCharsets.UTF_8), offset));
+    }
+
+    @Test
+    public void write_schemalessMaps_shouldStayWithinBudget() throws IOException {
+        assertWithinBudget("map", 3072, offset -> {
+            Map<String, Object> value = new LinkedHashMap<>();
+            value.put("id", (long) offset);
+            value.put("customer", "customer-" + offset % 100);
+            value.put("status", "PLACED");
+            value.put("total", 99.95);
+            value.put("express", offset % 2 == 0);
+            value.put("message", LINE);
+            return record(null, value, offset);
+        });
+    }
+
+    @Test
+    public void write_structs_shouldStayWithinBudget() throws IOException {
+        assertWithinBudget("struct", 1280, offset -> record(ORDER_SCHEMA, new Struct(ORDER_SCHEMA)
+                .put("id", (long) offset)
+                .put("customer", "customer-" + offset % 100)
+                .put("status", "PLACED")
+                .put("total", 99.95)
+                .put("express", offset % 2 == 0)
+                .put("message", LINE), offset));
+    }
+
+    /**
+     * Writes records of a shape until the writer is warmed up, then fails if the fewest bytes the writing thread
+     * allocated per record over the measured rounds exceed the budget.
+     */
+    private void assertWithinBudget(String shape, long budget, IntFunction<SinkRecord> shapeRecord) throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+        List<SinkRecord> records = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(shapeRecord.apply(i));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            writer.write(records);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            if (round >= WARMUP_ROUNDS) {
+                fewest = Math.min(fewest, allocated);
+            }
+        }
+
+        long perRecord = fewest / RECORDS;
+        Assert.assertTrue(shape + " records allocated " + perRecord + " bytes each, the budget is " + budget,
+                perRecord <= budget);
+    }
+
+    private static SinkRecord record(Schema schema, Object value, int offset) {
+        return new SinkRecord("someTopic", 0, null, null, schema, value, offset);
+    }
+}
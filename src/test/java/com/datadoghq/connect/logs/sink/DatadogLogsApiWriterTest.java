@@ -8,11 +8,16 @@ package com.datadoghq.connect.logs.sink;
 import com.datadoghq.connect.logs.sink.util.RequestInfo;
 import com.datadoghq.connect.logs.sink.util.RestHelper;
 import com.datadoghq.connect.logs.util.Project;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.connect.data.Decimal;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.header.ConnectHeaders;
 import org.apache.kafka.connect.header.Headers;
 import org.apache.kafka.connect.sink.SinkRecord;
@@ -24,12 +29,18 @@ import org.junit.Test;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatadogLogsApiWriterTest {
     private static String apiKey = "API_KEY";
@@ -150,6 +161,393 @@ public class DatadogLogsApiWriterTest {
         Assert.assertEquals(requestBodySetExpected, requestBodySetActual);
     }
 
+    @Test
+    public void writer_withCoalescedTopics_shouldBatchTopicsTogether() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.COALESCE_TOPICS, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 2, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic1", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic2", 0, null, "someKey", null, "someValue2", 0));
+        records.add(new SinkRecord("someTopic1", 1, null, "someKey", null, "someValue3", 0));
+        writer.write(records);
+
+        Assert.assertEquals(2, restHelper.getCapturedRequests().size());
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic1\"},{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic2\"}]", restHelper.getCapturedRequests().get(0).getBody());
+        Assert.assertEquals("[{\"message\":\"someValue3\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic1\"}]", restHelper.getCapturedRequests().get(1).getBody());
+    }
+
+    @Test
+    public void writer_withAggregatedTopic_shouldSendMetricsInsteadOfLogs() throws IOException {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.emptyList(), 1000, 0, 100, clock::get);
+        props.put(DatadogLogsSinkConnectorConfig.AGGREGATION_URL, "localhost:8080");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0), null,
+                DatadogLogsApiWriter::failOnRejectedRecord, null, null, null, null, aggregator, null);
+
+        records.add(new SinkRecord("access", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 0));
+        records.add(new SinkRecord("access", 0, null, "someKey", null, "someValue3", 1));
+        writer.write(records);
+
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        Assert.assertEquals("[{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", restHelper.getCapturedRequests().get(0).getBody());
+
+        clock.set(1000);
+        writer.write(Collections.emptyList());
+
+        Assert.assertEquals(2, restHelper.getCapturedRequests().size());
+        RequestInfo request = restHelper.getCapturedRequests().get(1);
+        Assert.assertEquals("/api/v1/series", request.getUrl());
+        Assert.assertEquals("{\"series\":[{\"metric\":\"logs.count\",\"type\":\"count\",\"interval\":1,\"points\":[[0,2]],\"tags\":[\"topic:access\"]}]}", request.getBody());
+    }
+
+    @Test
+    public void writer_withUnsentMetrics_shouldSendThemWithNextWrite() throws IOException {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.emptyList(), 1000, 0, 100, clock::get);
+        props.put(DatadogLogsSinkConnectorConfig.AGGREGATION_URL, "localhost:8080");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0), null,
+                DatadogLogsApiWriter::failOnRejectedRecord, null, null, null, null, aggregator, null);
+
+        records.add(new SinkRecord("access", 0, null, "someKey", null, "someValue1", 0));
+        writer.write(records);
+        restHelper.setHttpStatusCode(503);
+        clock.set(1000);
+        writer.write(Collections.emptyList());
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+
+        restHelper.setHttpStatusCode(200);
+        writer.write(Collections.singletonList(new SinkRecord("access", 0, null, "someKey", null, "someValue2", 1)));
+        clock.set(1500);
+        writer.flushMetrics();
+
+        List<RequestInfo> requests = restHelper.getCapturedRequests();
+        Assert.assertEquals(3, requests.size());
+        Assert.assertEquals("{\"series\":[{\"metric\":\"logs.count\",\"type\":\"count\",\"interval\":1,\"points\":[[0,1]],\"tags\":[\"topic:access\"]}]}", requests.get(1).getBody());
+        // The flushed window is timestamped at the flush
+        Assert.assertEquals("{\"series\":[{\"metric\":\"logs.count\",\"type\":\"count\",\"interval\":1,\"points\":[[1,1]],\"tags\":[\"topic:access\"]}]}", requests.get(2).getBody());
+    }
+
+    @Test
+    public void writer_withAggregatedRecords_shouldOnlyTrackLagOfLogs() throws IOException {
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.emptyList(), 60_000, 0, 100, () -> 0L);
+        DeliveryLagTracker deliveryLag = new DeliveryLagTracker("aggregated-lag-test");
+        DeliveredOffsets deliveredOffsets = new DeliveredOffsets();
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0), null,
+                DatadogLogsApiWriter::failOnRejectedRecord, null, deliveryLag, deliveredOffsets, null, aggregator, null);
+
+        long now = System.currentTimeMillis();
+        records.add(new SinkRecord("access", 0, null, "someKey", null, "someValue1", 0, now, TimestampType.CREATE_TIME));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 0, now, TimestampType.CREATE_TIME));
+        deliveredOffsets.begin(records);
+        writer.write(records);
+        deliveredOffsets.end();
+
+        // The aggregated record is done with, but it was not sent as a log
+        Assert.assertEquals(Long.valueOf(0), deliveredOffsets.watermark(new TopicPartition("access", 0)));
+        Assert.assertNull(deliveryLag.get(new TopicPartition("access", 0)));
+        Assert.assertEquals(1, deliveryLag.get(new TopicPartition("someTopic", 0)).getCount());
+        deliveryLag.stop();
+    }
+
+    @Test
+    public void writer_withDynamicTags_shouldTagEntriesFromRecords() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.DD_TAGS, "env:prod");
+        props.put(DatadogLogsSinkConnectorConfig.DD_DYNAMIC_TAGS, "tenant=header:tenant,customer=key");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        Headers headers = new ConnectHeaders();
+        headers.addString("tenant", "acme");
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0, null, null, headers));
+        records.add(new SinkRecord("someTopic", 0, null, null, null, "someValue2", 1));
+        writer.write(records);
+
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic,env:prod,tenant:acme,customer:someKey\"}," +
+                "{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic,env:prod\"}]", restHelper.getCapturedRequests().get(0).getBody());
+    }
+
+    @Test
+    public void writer_withBytesAsText_shouldSendUtf8Messages() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.BYTES_AS_TEXT, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic", 0, null, null, null, "tab\t\"open\"\n".getBytes(StandardCharsets.UTF_8), 0));
+        records.add(new SinkRecord("someTopic", 0, null, null, Schema.BYTES_SCHEMA, "someValue2".getBytes(StandardCharsets.UTF_8), 1));
+        writer.write(records);
+
+        Assert.assertEquals("[{\"message\":\"tab\\t\\\"open\\\"\\n\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}," +
+                "{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", restHelper.getCapturedRequests().get(0).getBody());
+    }
+
+    @Test
+    public void writer_aboveParallelCompressionThreshold_shouldSendValidPayload() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.PARALLEL_COMPRESSION_THRESHOLD, "1");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 0));
+        writer.write(records);
+
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        RequestInfo request = restHelper.getCapturedRequests().get(0);
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", request.getBody());
+    }
+
+    @Test
+    public void writer_streamingRequests_shouldSendChunkedPayload() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, null, 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 0));
+        records.add(new SinkRecord("emptyTopic", 0, null, "someKey", null, null, 0));
+        writer.write(records);
+
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        RequestInfo request = restHelper.getCapturedRequests().get(0);
+        Assert.assertTrue(request.getHeaders().contains("Transfer-Encoding:chunked"));
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", request.getBody());
+    }
+
+    @Test
+    public void writer_rejectedRecord_shouldBeIsolatedAndReported() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        List<SinkRecord> rejected = new ArrayList<>();
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0),
+                (record, error) -> rejected.add(record));
+
+        restHelper.setRejectedContent("poison");
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 1));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "poison", 2));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue4", 3));
+        writer.write(records);
+
+        Assert.assertEquals(1, rejected.size());
+        Assert.assertEquals(2, rejected.get(0).kafkaOffset());
+
+        List<RequestInfo> requests = restHelper.getCapturedRequests();
+        Assert.assertEquals(5, requests.size());
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", requests.get(1).getBody());
+        Assert.assertEquals("[{\"message\":\"someValue4\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", requests.get(4).getBody());
+    }
+
+    @Test
+    public void writer_rejectedRequestOfSplitBatch_shouldOnlyBisectItsRecords() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.MAX_PAYLOAD_BYTES, "1024");
+        String padding = new String(new char[400]).replace('\0', 'x');
+        for (int i = 0; i < 6; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, (i == 3 ? "poison" : "someValue" + i) + padding, i));
+        }
+        restHelper.setRejectedContent("poison");
+
+        for (String mode : Arrays.asList("heap", DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS)) {
+            Map<String, String> modeProps = new HashMap<>(props);
+            modeProps.put(mode, "true");
+            List<SinkRecord> rejected = new ArrayList<>();
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 500, modeProps),
+                    new RetryPayloadCache(0), (record, error) -> rejected.add(record));
+            writer.write(records);
+
+            Assert.assertEquals(mode, Collections.singletonList(records.get(3)), rejected);
+            // The records of the accepted requests are not sent again
+            List<RequestInfo> requests = restHelper.getCapturedRequests();
+            Assert.assertEquals(mode, 5, requests.size());
+            Assert.assertTrue(mode, requests.get(0).getBody().contains("someValue0") && requests.get(0).getBody().contains("someValue1"));
+            Assert.assertTrue(mode, requests.get(2).getBody().contains("someValue2") && !requests.get(2).getBody().contains("poison"));
+            Assert.assertTrue(mode, requests.get(4).getBody().contains("someValue4") && requests.get(4).getBody().contains("someValue5"));
+            restHelper.flushCapturedRequests();
+        }
+    }
+
+    @Test
+    public void writer_rejectedRequestWithinExplodedRecord_shouldOnlyResendItsEntries() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.EXPLODE_ARRAYS, "true");
+        props.put(DatadogLogsSinkConnectorConfig.MAX_PAYLOAD_BYTES, "1024");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lines.add(i == 30 || i == 33 ? "poison " + i : "line " + i + " of a record that is split into several requests");
+        }
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, lines, 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "last", 1));
+        restHelper.setRejectedContent("poison");
+
+        for (String mode : Arrays.asList("heap", DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS)) {
+            Map<String, String> modeProps = new HashMap<>(props);
+            modeProps.put(mode, "true");
+            List<SinkRecord> rejected = new ArrayList<>();
+            DeliveredOffsets deliveredOffsets = new DeliveredOffsets();
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 500, modeProps),
+                    new RetryPayloadCache(0), null, (record, error) -> rejected.add(record), null, null,
+                    deliveredOffsets, null, null, null);
+            deliveredOffsets.begin(records);
+            writer.write(records);
+            deliveredOffsets.end();
+
+            // The exploded record is handled once, however many of its entries are rejected
+            Assert.assertEquals(mode, Collections.singletonList(records.get(0)), rejected);
+            StringBuilder accepted = new StringBuilder();
+            for (RequestInfo request : restHelper.getCapturedRequests()) {
+                if (!request.getBody().contains("poison")) {
+                    accepted.append(request.getBody());
+                }
+            }
+            for (String line : lines) {
+                int index = accepted.indexOf(line);
+                Assert.assertTrue(mode + ": " + line, line.startsWith("poison") ? index < 0
+                        : index >= 0 && index == accepted.lastIndexOf(line));
+            }
+            Assert.assertTrue(mode, accepted.indexOf("\"last\"") >= 0);
+            // The rejected record is reported by its handler, the last one is delivered
+            Assert.assertNull(mode, deliveredOffsets.watermark(new TopicPartition("someTopic", 0)));
+            restHelper.flushCapturedRequests();
+        }
+    }
+
+    @Test
+    public void writer_failedRequestOfSplitBatch_shouldMarkAcceptedRecordsDelivered() {
+        props.put(DatadogLogsSinkConnectorConfig.MAX_PAYLOAD_BYTES, "1024");
+        String padding = new String(new char[400]).replace('\0', 'x');
+        for (int i = 0; i < 6; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, (i == 2 ? "unavailable" : "someValue" + i) + padding, i));
+        }
+        restHelper.setFailedContent("unavailable");
+
+        for (String mode : Arrays.asList("heap", DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS)) {
+            Map<String, String> modeProps = new HashMap<>(props);
+            modeProps.put(mode, "true");
+            DeliveredOffsets deliveredOffsets = new DeliveredOffsets();
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 500, modeProps),
+                    new RetryPayloadCache(0), null, DatadogLogsApiWriter::failOnRejectedRecord, null, null,
+                    deliveredOffsets, null, null, null);
+            deliveredOffsets.begin(records);
+            try {
+                writer.write(records);
+                Assert.fail(mode + ": expected the write to fail");
+            } catch (IOException e) {
+                // The second request of the batch failed
+            }
+            deliveredOffsets.end();
+
+            Assert.assertEquals(mode, Long.valueOf(1), deliveredOffsets.watermark(new TopicPartition("someTopic", 0)));
+            Assert.assertEquals(mode, 2, restHelper.getCapturedRequests().size());
+            restHelper.flushCapturedRequests();
+        }
+    }
+
+    @Test
+    public void writer_batchWithoutEntries_shouldMarkRecordsDelivered() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, null, i));
+        }
+
+        for (String mode : Arrays.asList("heap", DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS,
+                DatadogLogsSinkConnectorConfig.OFF_HEAP_ENABLED)) {
+            Map<String, String> modeProps = new HashMap<>(props);
+            modeProps.put(mode, "true");
+            DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, modeProps);
+            DeliveredOffsets deliveredOffsets = new DeliveredOffsets();
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0),
+                    new DirectSlabPool(config.offHeapMaxBytes), DatadogLogsApiWriter::failOnRejectedRecord, null, null,
+                    deliveredOffsets, null, null, null);
+            deliveredOffsets.begin(records);
+            writer.write(records);
+            deliveredOffsets.end();
+
+            Assert.assertEquals(mode, Long.valueOf(2), deliveredOffsets.watermark(new TopicPartition("someTopic", 0)));
+            Assert.assertEquals(mode, 0, restHelper.getCapturedRequests().size());
+        }
+    }
+
+    @Test
+    public void writer_withQuota_shouldChargeEveryRequestSent() {
+        props.put(DatadogLogsSinkConnectorConfig.RETRY_PAYLOAD_CACHE_BYTES, String.valueOf(1024 * 1024));
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        // One log per second and a stopped clock, so that the delay tells how many logs were charged
+        EgressQuota quota = new EgressQuota("test", 0, 1, () -> 0L);
+        RetryPayloadCache retryPayloads = new RetryPayloadCache(config.retryPayloadCacheBytes);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, retryPayloads, null,
+                (record, error) -> { }, null, null, null, quota, null, null);
+
+        for (int i = 0; i < 4; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, i == 2 ? "poison" : "someValue" + i, i));
+        }
+        restHelper.setRejectedContent("poison");
+        try {
+            writer.write(records);
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+        // The batch of 4 logs, then its halves of 2 and the halves of the rejected one
+        Assert.assertEquals(5, restHelper.getCapturedRequests().size());
+        Assert.assertEquals((4 + 2 + 2 + 1 + 1 - 1) * 1000, quota.delayMs());
+
+        restHelper.setRejectedContent(null);
+        restHelper.setFailedContent("someValue");
+        List<SinkRecord> batch = records.subList(0, 2);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                writer.write(batch);
+                Assert.fail("Expected the write to fail");
+            } catch (IOException e) {
+                // The payload is kept for the next attempt, which resends it
+            }
+        }
+        Assert.assertEquals((10 + 2 + 2 - 1) * 1000, quota.delayMs());
+    }
+
+    @Test
+    public void writer_withRequestConcurrency_shouldSendBatchesConcurrently() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.REQUEST_CONCURRENCY, "4");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 2, props);
+        RequestExecutor requests = RequestExecutor.of("test", config);
+        List<SinkRecord> rejected = new ArrayList<>();
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0), null,
+                (record, error) -> rejected.add(record), null, null, null, null, null, requests);
+
+        restHelper.setRejectedContent("poison");
+        for (int i = 0; i < 8; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, i == 5 ? "poison" : "someValue" + i, i));
+        }
+        try {
+            writer.write(records);
+        } finally {
+            requests.shutdown();
+        }
+
+        Assert.assertEquals(1, rejected.size());
+        Assert.assertEquals(5, rejected.get(0).kafkaOffset());
+        Set<String> bodies = new HashSet<>();
+        for (RequestInfo request : restHelper.getCapturedRequests()) {
+            bodies.add(request.getBody());
+        }
+        Assert.assertEquals(6, restHelper.getCapturedRequests().size());
+        Assert.assertTrue(bodies.contains("[{\"message\":\"someValue4\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]"));
+        Assert.assertTrue(bodies.contains("[{\"message\":\"someValue6\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue7\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]"));
+    }
+
+    @Test(expected = DataException.class)
+    public void writer_rejectedRecordWithoutReporter_shouldThrowDataException() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        restHelper.setHttpStatusCode(413);
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        writer.write(records);
+    }
+
     @Test(expected = IOException.class)
     public void writer_IOException_for_status_429() throws Exception {
         DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
@@ -160,6 +558,260 @@ public class DatadogLogsApiWriterTest {
         writer.write(records);
     }
 
+    @Test
+    public void writer_retryAfterFailure_shouldResendCachedPayload() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        RetryPayloadCache retryPayloads = new RetryPayloadCache(1024 * 1024);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        restHelper.setHttpStatusCode(500);
+        try {
+            new DatadogLogsApiWriter(config, retryPayloads, DatadogLogsApiWriter::failOnRejectedRecord).write(records);
+            Assert.fail("IOException expected.");
+        } catch (IOException expected) {}
+        Assert.assertEquals(1, retryPayloads.size());
+
+        restHelper.setHttpStatusCode(200);
+        new DatadogLogsApiWriter(config, retryPayloads, DatadogLogsApiWriter::failOnRejectedRecord).write(records);
+
+        Assert.assertEquals(0, retryPayloads.size());
+        Assert.assertEquals(2, restHelper.getCapturedRequests().size());
+        Assert.assertEquals(restHelper.getCapturedRequests().get(0).getBody(), restHelper.getCapturedRequests().get(1).getBody());
+    }
+
+    @Test
+    public void writer_withDestinations_shouldRouteByTopicAndHeader() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.DESTINATIONS, "eu,tenant");
+        props.put("datadog.destination.eu.api_key", "EU_API_KEY");
+        props.put("datadog.destination.eu.topics.regex", "eu-.*");
+        props.put("datadog.destination.tenant.api_key", "TENANT_API_KEY");
+        props.put("datadog.destination.tenant.header.name", "tenant");
+        props.put("datadog.destination.tenant.header.value", "acme");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        Headers headers = new ConnectHeaders();
+        headers.addString("tenant", "acme");
+        records.add(new SinkRecord("eu-topic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 0, null, null, headers));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue3", 1));
+        writer.write(records);
+
+        Assert.assertEquals(3, restHelper.getCapturedRequests().size());
+        Map<String, String> bodiesByApiKey = new HashMap<>();
+        for (RequestInfo request : restHelper.getCapturedRequests()) {
+            for (String key : new String[]{apiKey, "EU_API_KEY", "TENANT_API_KEY"}) {
+                if (request.getHeaders().contains("DD-API-KEY:" + key)) {
+                    bodiesByApiKey.put(key, request.getBody());
+                }
+            }
+        }
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:eu-topic\"}]", bodiesByApiKey.get("EU_API_KEY"));
+        Assert.assertEquals("[{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", bodiesByApiKey.get("TENANT_API_KEY"));
+        Assert.assertEquals("[{\"message\":\"someValue3\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", bodiesByApiKey.get(apiKey));
+    }
+
+    @Test
+    public void writer_withPriorityField_shouldSendPriorityRecordsFirst() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.PRIORITY_FIELD, "level");
+        props.put(DatadogLogsSinkConnectorConfig.PRIORITY_HEADER, "status");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 2, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        Headers headers = new ConnectHeaders();
+        headers.addString("status", "Critical");
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, Collections.singletonMap("level", "debug"), 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, Collections.singletonMap("level", "ERROR"), 1));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue", 2, null, null, headers));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, Collections.singletonMap("level", "info"), 3));
+        writer.write(records);
+
+        Assert.assertEquals(2, restHelper.getCapturedRequests().size());
+        Assert.assertEquals("[{\"message\":{\"level\":\"ERROR\"},\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", restHelper.getCapturedRequests().get(0).getBody());
+        Assert.assertEquals("[{\"message\":{\"level\":\"debug\"},\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":{\"level\":\"info\"},\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", restHelper.getCapturedRequests().get(1).getBody());
+    }
+
+    @Test
+    public void writer_withOffHeapEncoding_shouldSendSamePayload() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.OFF_HEAP_ENABLED, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, null, 1));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 2));
+        writer.write(records);
+
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        Assert.assertEquals("[{\"message\":\"someValue1\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"},{\"message\":\"someValue2\",\"ddsource\":\"kafka-connect\",\"ddtags\":\"topic:someTopic\"}]", restHelper.getCapturedRequests().get(0).getBody());
+    }
+
+    @Test
+    public void writer_failedWithOffHeapEncoding_shouldReleasePendingSlabs() {
+        props.put(DatadogLogsSinkConnectorConfig.OFF_HEAP_ENABLED, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DirectSlabPool slabs = new DirectSlabPool(config.offHeapMaxBytes);
+        restHelper.setHttpStatusCode(500);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 0));
+        records.add(new SinkRecord("otherTopic", 0, null, "someKey", null, "someValue2", 0));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config, new RetryPayloadCache(0), slabs,
+                    DatadogLogsApiWriter::failOnRejectedRecord, null, null, null, null, null, null);
+            try {
+                writer.write(records);
+                Assert.fail("Expected the write to fail");
+            } catch (IOException e) {
+                // The batch of the other topic was still pending
+            }
+            Assert.assertEquals(config.offHeapMaxBytes.longValue(), slabs.available());
+        }
+        Assert.assertEquals(2, slabs.allocated());
+    }
+
+    @Test
+    public void writer_withOffHeapBudgetUsedUp_shouldSendBatchEarly() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.OFF_HEAP_ENABLED, "true");
+        props.put(DatadogLogsSinkConnectorConfig.OFF_HEAP_MAX_BYTES, String.valueOf(DirectSlabPool.SLAB_SIZE));
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 30_000) {
+            large.append("someValue");
+        }
+        for (int i = 0; i < 3; i++) {
+            records.add(new SinkRecord("someTopic", 0, null, "someKey", null, large.toString() + i, i));
+        }
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, large.toString() + large, 3));
+        writer.write(records);
+
+        List<RequestInfo> requests = restHelper.getCapturedRequests();
+        Assert.assertEquals(3, requests.size());
+        Assert.assertTrue(requests.get(0).getBody().contains(large + "0") && requests.get(0).getBody().contains(large + "1"));
+        Assert.assertTrue(requests.get(1).getBody().contains(large + "2"));
+        Assert.assertTrue(requests.get(2).getBody().contains(large.toString() + large));
+    }
+
+    @Test
+    public void writer_withExplodedArrays_shouldSendOneLogPerElement() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.EXPLODE_ARRAYS, "true");
+        props.put(DatadogLogsSinkConnectorConfig.EXPLODE_FIELD, "lines");
+        props.put(DatadogLogsSinkConnectorConfig.ADD_PUBLISHED_DATE, "true");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        Schema schema = SchemaBuilder.struct()
+                .field("host", Schema.STRING_SCHEMA)
+                .field("lines", SchemaBuilder.array(Schema.OPTIONAL_STRING_SCHEMA).build())
+                .build();
+        Struct value = new Struct(schema).put("host", "someHost").put("lines", Arrays.asList("line3", null, "line4"));
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, Arrays.asList("line1", "line2"), 0, 10L, TimestampType.CREATE_TIME));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", schema, value, 1, 11L, TimestampType.CREATE_TIME));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, Collections.emptyList(), 2, 12L, TimestampType.CREATE_TIME));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "line5", 3, 13L, TimestampType.CREATE_TIME));
+        writer.write(records);
+
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        Assert.assertEquals("[{\"message\":\"line1\",\"ddsource\":\"kafka-connect\",\"published_date\":10,\"ddtags\":\"topic:someTopic\"}," +
+                        "{\"message\":\"line2\",\"ddsource\":\"kafka-connect\",\"published_date\":10,\"ddtags\":\"topic:someTopic\"}," +
+                        "{\"message\":\"line3\",\"ddsource\":\"kafka-connect\",\"published_date\":11,\"ddtags\":\"topic:someTopic\"}," +
+                        "{\"message\":\"line4\",\"ddsource\":\"kafka-connect\",\"published_date\":11,\"ddtags\":\"topic:someTopic\"}," +
+                        "{\"message\":\"line5\",\"ddsource\":\"kafka-connect\",\"published_date\":13,\"ddtags\":\"topic:someTopic\"}]",
+                restHelper.getCapturedRequests().get(0).getBody());
+    }
+
+    @Test
+    public void writer_explodedRecordAboveMaxPayload_shouldSplitRequests() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.EXPLODE_ARRAYS, "true");
+        props.put(DatadogLogsSinkConnectorConfig.MAX_PAYLOAD_BYTES, "1024");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lines.add("line " + i + " of a record that is split into several requests");
+        }
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "first", 0));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, lines, 1));
+
+        for (String mode : Arrays.asList("heap", DatadogLogsSinkConnectorConfig.STREAMING_REQUESTS,
+                DatadogLogsSinkConnectorConfig.OFF_HEAP_ENABLED)) {
+            Map<String, String> modeProps = new HashMap<>(props);
+            modeProps.put(mode, "true");
+            DatadogLogsApiWriter writer = new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 500, modeProps));
+            writer.write(records);
+
+            List<RequestInfo> requests = restHelper.getCapturedRequests();
+            Assert.assertTrue(mode, requests.size() > 1);
+            StringBuilder messages = new StringBuilder();
+            for (RequestInfo request : requests) {
+                Assert.assertTrue(mode, request.getBody().length() <= 1024);
+                Assert.assertTrue(mode, request.getBody().startsWith("[{") && request.getBody().endsWith("}]"));
+                messages.append(request.getBody());
+            }
+            Assert.assertTrue(mode, messages.indexOf("\"first\"") < messages.indexOf("line 0 "));
+            for (String line : lines) {
+                Assert.assertEquals(mode, messages.indexOf(line), messages.lastIndexOf(line));
+                Assert.assertTrue(mode, messages.indexOf(line) >= 0);
+            }
+            restHelper.flushCapturedRequests();
+        }
+    }
+
+    @Test
+    public void writer_withParallelEncoding_shouldSendSamePayloadsInOrder() throws IOException {
+        props.put(DatadogLogsSinkConnectorConfig.PARALLEL_ENCODING_CHUNK_SIZE, "3");
+        props.put(DatadogLogsSinkConnectorConfig.MAX_PAYLOAD_BYTES, "2048");
+        Schema schema = SchemaBuilder.struct()
+                .field("id", Schema.INT32_SCHEMA)
+                .field("text", Schema.STRING_SCHEMA)
+                .build();
+        for (int i = 0; i < 40; i++) {
+            Object value = i % 2 == 0
+                    ? new Struct(schema).put("id", i).put("text", "structured record " + i)
+                    : Collections.singletonMap("text", "schemaless record " + i);
+            records.add(new SinkRecord("someTopic", i % 3, null, "someKey", i % 2 == 0 ? schema : null,
+                    i % 7 == 0 ? null : value, i));
+        }
+
+        new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 25, props)).write(records);
+        List<String> sequential = new ArrayList<>();
+        for (RequestInfo request : restHelper.getCapturedRequests()) {
+            sequential.add(request.getBody());
+        }
+        restHelper.flushCapturedRequests();
+
+        props.put(DatadogLogsSinkConnectorConfig.PARALLEL_ENCODING, "true");
+        new DatadogLogsApiWriter(new DatadogLogsSinkConnectorConfig(false, 25, props)).write(records);
+        List<String> parallel = new ArrayList<>();
+        for (RequestInfo request : restHelper.getCapturedRequests()) {
+            parallel.add(request.getBody());
+        }
+
+        Assert.assertTrue(sequential.size() > 2);
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void checkConnection_shouldSendEmptyBatch() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        Assert.assertEquals(200, writer.checkConnection());
+        Assert.assertEquals(1, restHelper.getCapturedRequests().size());
+        RequestInfo request = restHelper.getCapturedRequests().get(0);
+        Assert.assertEquals("[]", request.getBody());
+        Assert.assertTrue(request.getHeaders().contains("DD-API-KEY:" + apiKey));
+    }
+
+    @Test
+    public void checkConnection_rejectedApiKey_shouldReturnStatus() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 500, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        restHelper.setHttpStatusCode(403);
+        Assert.assertEquals(403, writer.checkConnection());
+    }
+
     @Test
     public void metadata_asOneBatch_shouldPopulatePerBatch() throws IOException {
         props.put(DatadogLogsSinkConnectorConfig.DD_TAGS, "team:agent-core, author:berzan");
@@ -243,4 +895,39 @@ public class DatadogLogsApiWriterTest {
         Assert.assertEquals(requestBodySetExpected, requestBodySetActual);
         props.remove(DatadogLogsSinkConnectorConfig.PARSE_RECORD_HEADERS);
     }
+
+    @Test
+    public void writer_withFlightRecording_shouldRecordEvents() throws IOException {
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(false, 2, props);
+        DatadogLogsApiWriter writer = new DatadogLogsApiWriter(config);
+
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue1", 4));
+        records.add(new SinkRecord("someTopic", 0, null, "someKey", null, "someValue2", 5));
+
+        Path dump = Files.createTempFile("datadog-logs", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.datadoghq.connect.logs.Encode");
+            recording.enable("com.datadoghq.connect.logs.HttpRequest");
+            recording.start();
+            writer.write(records);
+            recording.stop();
+            recording.dump(dump);
+
+            Map<String, RecordedEvent> events = new HashMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+                events.put(event.getEventType().getName(), event);
+            }
+
+            RecordedEvent encode = events.get("com.datadoghq.connect.logs.Encode");
+            Assert.assertEquals("someTopic[0:4-5]", encode.getString("partitions"));
+            Assert.assertEquals(2, encode.getInt("logCount"));
+            Assert.assertEquals(restHelper.getCapturedRequests().get(0).getBody().length(), encode.getLong("rawBytes"));
+
+            RecordedEvent request = events.get("com.datadoghq.connect.logs.HttpRequest");
+            Assert.assertEquals(200, request.getInt("status"));
+            Assert.assertEquals(2, request.getInt("recordCount"));
+        } finally {
+            Files.delete(dump);
+        }
+    }
 }
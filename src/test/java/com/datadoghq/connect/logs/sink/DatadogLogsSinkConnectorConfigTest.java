@@ -64,4 +64,54 @@ public class DatadogLogsSinkConnectorConfigTest {
 
         assertEquals("https://http-intake.logs.SITE:443/api/v2/logs", customConfig.getURL().toString());
     }
+
+    @Test
+    public void getMetricsURL_ddSite() throws MalformedURLException {
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        props.put(DatadogLogsSinkConnectorConfig.DD_SITE, "SITE");
+        DatadogLogsSinkConnectorConfig customConfig = new DatadogLogsSinkConnectorConfig(props);
+
+        assertEquals("https://api.SITE:443/api/v1/series", customConfig.getMetricsURL().toString());
+    }
+
+    @Test
+    public void getDestinationRoutes_shouldOverrideEndpointAndApiKey() throws MalformedURLException {
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        props.put(DatadogLogsSinkConnectorConfig.DD_URL, "example.com");
+        props.put(DatadogLogsSinkConnectorConfig.PROXY_URL, "proxy.example.com");
+        props.put(DatadogLogsSinkConnectorConfig.DESTINATIONS, "eu");
+        props.put("datadog.destination.eu.api_key", "456");
+        props.put("datadog.destination.eu.site", "datadoghq.eu");
+        props.put("datadog.destination.eu.topics.regex", "eu-.*");
+        DatadogLogsSinkConnectorConfig config = new DatadogLogsSinkConnectorConfig(props);
+
+        assertEquals(1, config.getDestinationRoutes().size());
+        DatadogLogsSinkConnectorConfig destination = config.getDestinationRoutes().get(0).getConfig();
+        assertEquals("456", destination.ddApiKey);
+        assertEquals("proxy.example.com", destination.proxyURL);
+        assertEquals("https://http-intake.logs.datadoghq.eu:443/api/v2/logs", destination.getURL().toString());
+        assertEquals(0, destination.getDestinationRoutes().size());
+    }
+
+    @Test
+    public void constructor_givenDestinationWithoutApiKey_shouldThrowException() {
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        props.put(DatadogLogsSinkConnectorConfig.DESTINATIONS, "eu");
+        props.put("datadog.destination.eu.topics.regex", "eu-.*");
+
+        assertThrows(ConfigException.class, () -> new DatadogLogsSinkConnectorConfig(props));
+    }
+
+    @Test
+    public void constructor_givenDestinationWithoutRule_shouldThrowException() {
+        props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        props.put(DatadogLogsSinkConnectorConfig.DESTINATIONS, "eu");
+        props.put("datadog.destination.eu.api_key", "456");
+
+        assertThrows(ConfigException.class, () -> new DatadogLogsSinkConnectorConfig(props));
+    }
 }
@@ -5,7 +5,9 @@ This product includes software developed at Datadog (https://www.datadoghq.com/)
 
 package com.datadoghq.connect.logs.sink;
 
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.errors.RetriableException;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.apache.kafka.connect.sink.SinkTaskContext;
@@ -17,7 +19,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.junit.Assert.*;
 
@@ -89,4 +95,139 @@ public class DatadogLogsSinkTaskTest extends EasyMockSupport {
 
         verifyAll();
     }
+
+    @Test
+    public void putTask_onRejectedRecord_shouldNotRetry() throws IOException {
+        Set<SinkRecord> records = Collections.singleton(new SinkRecord(
+                "stub",
+                0,
+                null,
+                null,
+                null,
+                "someVal",
+                0
+        ));
+
+        final DatadogLogsApiWriter mockWriter = createMock(DatadogLogsApiWriter.class);
+        SinkTaskContext ctx = createMock(SinkTaskContext.class);
+
+        mockWriter.write(records);
+        expectLastCall().andThrow(new RecordRejectedException("rejected", null));
+
+        DatadogLogsSinkTask task = new DatadogLogsSinkTask() {
+            @Override
+            protected void initWriter() {
+                this.writer = mockWriter;
+            }
+        };
+        task.initialize(ctx);
+
+        Map<String, String> props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        task.start(props);
+
+        replayAll();
+
+        try {
+            task.put(records);
+            fail("Non-retriable exception expected.");
+        } catch (RetriableException e) {
+            fail("Non-retriable exception expected.");
+        } catch (RecordRejectedException expected) {}
+
+        verifyAll();
+    }
+
+    @Test
+    public void putTask_onDataException_shouldRetry() throws IOException {
+        Set<SinkRecord> records = Collections.singleton(new SinkRecord(
+                "stub",
+                0,
+                null,
+                null,
+                null,
+                "someVal",
+                0
+        ));
+
+        final DatadogLogsApiWriter mockWriter = createMock(DatadogLogsApiWriter.class);
+        SinkTaskContext ctx = createMock(SinkTaskContext.class);
+
+        mockWriter.write(records);
+        expectLastCall().andThrow(new DataException("not encodable"));
+        ctx.timeout(anyLong());
+        expectLastCall();
+
+        DatadogLogsSinkTask task = new DatadogLogsSinkTask() {
+            @Override
+            protected void initWriter() {
+                this.writer = mockWriter;
+            }
+        };
+        task.initialize(ctx);
+
+        Map<String, String> props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        task.start(props);
+
+        replayAll();
+
+        try {
+            task.put(records);
+            fail("Retriable exception expected.");
+        } catch (RetriableException expected) {
+            assertEquals(DataException.class, expected.getCause().getClass());
+        }
+
+        verifyAll();
+    }
+
+    @Test
+    public void putTask_overQuota_shouldPausePartitionsUntilRefilled() throws IOException {
+        TopicPartition partition = new TopicPartition("stub", 0);
+        Set<SinkRecord> records = Collections.singleton(new SinkRecord(
+                "stub",
+                0,
+                null,
+                null,
+                null,
+                "someVal",
+                0
+        ));
+        AtomicLong clock = new AtomicLong();
+
+        final DatadogLogsApiWriter mockWriter = createMock(DatadogLogsApiWriter.class);
+        SinkTaskContext ctx = createMock(SinkTaskContext.class);
+
+        mockWriter.write(records);
+        mockWriter.write(Collections.emptyList());
+        expectLastCall().times(2);
+        expect(ctx.assignment()).andReturn(Collections.singleton(partition));
+        ctx.pause(partition);
+        ctx.timeout(1000);
+        ctx.resume(partition);
+
+        DatadogLogsSinkTask task = new DatadogLogsSinkTask() {
+            @Override
+            protected void initWriter() {
+                this.writer = mockWriter;
+            }
+        };
+        task.initialize(ctx);
+
+        Map<String, String> props = new HashMap<>();
+        props.put(DatadogLogsSinkConnectorConfig.DD_API_KEY, "123");
+        task.start(props);
+        task.quota = new EgressQuota("stub", 0, 1, clock::get);
+
+        replayAll();
+
+        task.quota.consume(0, 2);
+        task.put(records);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        task.put(Collections.emptyList());
+        task.put(Collections.emptyList());
+
+        verifyAll();
+    }
 }
@@ -0,0 +1,69 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DeliveredOffsetsTest {
+
+    @Test
+    public void begin_afterPartialDelivery_shouldSkipContiguouslyDeliveredRecords() {
+        DeliveredOffsets offsets = new DeliveredOffsets();
+        List<SinkRecord> records = new ArrayList<>();
+        for (long offset : new long[]{10, 11, 13, 14}) {
+            records.add(record(0, offset));
+        }
+        records.add(record(1, 5));
+        records.add(record(1, 6));
+
+        assertSame(records, offsets.begin(records));
+        // The batch of offset 13 failed, offset 14 was delivered along with a later batch
+        offsets.delivered(Arrays.asList(records.get(0), records.get(1), records.get(3)));
+        offsets.delivered(Collections.singletonList(records.get(5)));
+        offsets.end();
+
+        assertEquals(Long.valueOf(11), offsets.watermark(new TopicPartition("topic", 0)));
+        assertNull(offsets.watermark(new TopicPartition("topic", 1)));
+
+        Collection<SinkRecord> undelivered = offsets.begin(records);
+        assertEquals(Arrays.asList(records.get(2), records.get(3), records.get(4), records.get(5)), undelivered);
+        offsets.delivered(new ArrayList<>(undelivered));
+        offsets.end();
+
+        assertEquals(Long.valueOf(14), offsets.watermark(new TopicPartition("topic", 0)));
+        assertEquals(Long.valueOf(6), offsets.watermark(new TopicPartition("topic", 1)));
+        assertEquals(0, offsets.begin(records).size());
+    }
+
+    @Test
+    public void reset_reassignedPartition_shouldDeliverRecordsAgain() {
+        DeliveredOffsets offsets = new DeliveredOffsets();
+        List<SinkRecord> records = Arrays.asList(record(0, 1), record(1, 1));
+        offsets.begin(records);
+        offsets.delivered(records);
+        offsets.end();
+
+        offsets.reset(Collections.singletonList(new TopicPartition("topic", 0)));
+
+        assertEquals(Collections.singletonList(records.get(0)), offsets.begin(records));
+    }
+
+    private static SinkRecord record(int partition, long offset) {
+        return new SinkRecord("topic", partition, null, null, null, "value", offset);
+    }
+}
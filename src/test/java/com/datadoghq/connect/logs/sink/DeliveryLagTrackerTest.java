@@ -0,0 +1,101 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeliveryLagTrackerTest {
+
+    @Test
+    public void acknowledged_shouldTrackLagPerPartition() throws Exception {
+        long now = 1_000_000L;
+        DeliveryLagTracker tracker = new DeliveryLagTracker("lag-test", () -> now);
+        List<SinkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(record(0, i, now - i * 10));
+        }
+        records.add(record(1, 7, now - 5000));
+        records.add(new SinkRecord("topic", 1, null, null, null, "value", 8));
+
+        tracker.acknowledged(records, now);
+
+        PartitionDeliveryLagMBean first = tracker.get(new TopicPartition("topic", 0));
+        assertEquals(100, first.getCount());
+        assertEquals(990, first.getMaxMs());
+        assertEquals(99, first.getLastAcknowledgedOffset());
+        assertEquals(now - 990, first.getLastAcknowledgedTimestamp());
+        assertTrue(first.getP50Ms() >= 490 && first.getP50Ms() <= 600);
+        assertTrue(first.getP99Ms() >= 980 && first.getP99Ms() <= 1200);
+
+        PartitionDeliveryLagMBean second = tracker.get(new TopicPartition("topic", 1));
+        assertEquals(1, second.getCount());
+        assertEquals(7, second.getLastAcknowledgedOffset());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.datadoghq.connect.logs:type=delivery-lag,connector=\"lag-test\",topic=\"topic\",partition=0");
+        assertEquals(100L, server.getAttribute(name, "Count"));
+
+        tracker.close(Collections.singleton(new TopicPartition("topic", 0)));
+        assertFalse(server.isRegistered(name));
+        assertNull(tracker.get(new TopicPartition("topic", 0)));
+        tracker.stop();
+    }
+
+    @Test
+    public void get_idlePartition_shouldExpireLag() {
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        DeliveryLagTracker tracker = new DeliveryLagTracker("idle-test", clock::get);
+        tracker.acknowledged(Collections.singletonList(record(0, 0, clock.get() - 500)), clock.get());
+        PartitionDeliveryLagMBean lag = tracker.get(new TopicPartition("topic", 0));
+
+        clock.addAndGet(30_000);
+        assertTrue(lag.getP50Ms() >= 500);
+        assertEquals(500, lag.getMaxMs());
+
+        // The window of the record is the previous one
+        clock.addAndGet(60_000);
+        assertTrue(lag.getP50Ms() >= 500);
+        assertEquals(500, lag.getMaxMs());
+
+        clock.addAndGet(60_000);
+        assertEquals(0, lag.getP50Ms());
+        assertEquals(0, lag.getP99Ms());
+        assertEquals(0, lag.getMaxMs());
+        assertEquals(1, lag.getCount());
+        tracker.stop();
+    }
+
+    @Test
+    public void bucket_shouldBeMonotonic() {
+        int previous = 0;
+        for (long lag = 0; lag < 100_000; lag += 7) {
+            int bucket = DeliveryLagTracker.bucket(lag);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+        assertEquals(DeliveryLagTracker.bucket(Long.MAX_VALUE), DeliveryLagTracker.bucket(Long.MAX_VALUE - 1));
+    }
+
+    private SinkRecord record(int partition, long offset, long timestamp) {
+        return new SinkRecord("topic", partition, null, null, null, "value", offset, timestamp, TimestampType.CREATE_TIME);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EgressQuotaTest {
+
+    @Test
+    public void consume_beyondRate_shouldDelayUntilDebtIsPaidBack() {
+        AtomicLong clock = new AtomicLong();
+        EgressQuota quota = new EgressQuota("connector", 1000, 10, clock::get);
+
+        quota.consume(500, 1);
+        assertEquals(0, quota.delayMs());
+
+        quota.consume(1000, 1);
+        assertEquals(500, quota.delayMs());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        quota.consume(0, 12);
+        // 2 logs in debt outweigh 300 bytes in debt
+        assertEquals(300, quota.delayMs());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(0, quota.delayMs());
+
+        // Idle time refills the buckets up to one second of their rate
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        quota.consume(1000, 10);
+        assertEquals(0, quota.delayMs());
+        quota.consume(1, 0);
+        assertEquals(1, quota.delayMs());
+    }
+
+    @Test
+    public void acquire_sameConnector_shouldShareQuotaUntilLastRelease() {
+        assertNull(EgressQuota.acquire("connector", 0, 0));
+
+        EgressQuota first = EgressQuota.acquire("connector", 1000, 0);
+        EgressQuota second = EgressQuota.acquire("connector", 1000, 0);
+        EgressQuota other = EgressQuota.acquire("other", 1000, 0);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, first.references());
+
+        first.release();
+        second.release();
+        other.release();
+
+        EgressQuota restarted = EgressQuota.acquire("connector", 1000, 0);
+        assertNotSame(first, restarted);
+        restarted.release();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.apache.kafka.connect.json.JsonConverter;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class JsonBufferTest {
+    private static final String[] SAMPLES = {
+            "",
+            "plain ascii log line with some [brackets] and {braces}",
+            "quote \" backslash \\ tab \t newline \n control \u0001\u001f delete \u007f",
+            "latin \u00e9, cjk \u6f22\u5b57, emoji \ud83d\ude00, separators \u2028\u2029",
+            "lone surrogates \ud83d and \ude00",
+    };
+
+    @Test
+    public void writeString_shouldMatchGson() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String value = i < SAMPLES.length ? SAMPLES[i] : randomString(random);
+            JsonBuffer buffer = new JsonBuffer(16);
+            buffer.writeString(value);
+
+            assertArrayEquals(new JsonPrimitive(value).toString().getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+        }
+    }
+
+    @Test
+    public void writeUtf8String_shouldMatchDecodedString() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes;
+            if (i < SAMPLES.length) {
+                bytes = SAMPLES[i].getBytes(StandardCharsets.UTF_8);
+            } else if (i % 2 == 0) {
+                bytes = randomString(random).getBytes(StandardCharsets.UTF_8);
+            } else {
+                // Arbitrary bytes, most of them malformed UTF-8
+                bytes = new byte[random.nextInt(64)];
+                random.nextBytes(bytes);
+            }
+            // Skips the first byte, so that the input does not start at the beginning of the array
+            int offset = Math.min(bytes.length, 1);
+            JsonBuffer expected = new JsonBuffer(16);
+            expected.writeByte(',');
+            expected.writeString(new String(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8));
+            JsonBuffer buffer = new JsonBuffer(16);
+            buffer.writeByte(',');
+            buffer.writeUtf8String(bytes, offset, bytes.length - offset);
+
+            assertArrayEquals(expected.toByteArray(), buffer.toByteArray());
+        }
+    }
+
+    @Test
+    public void writeJson_jsonConverterOutput_shouldMatchGson() {
+        JsonConverter jsonConverter = new JsonConverter();
+        jsonConverter.configure(Collections.singletonMap("schemas.enable", "false"), false);
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            // Lone surrogates are left out, Jackson does not encode them
+            String value = i < SAMPLES.length - 1 ? SAMPLES[i] : randomString(random);
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put(value, value);
+            map.put("list", Arrays.asList(value, 1.5, null, true, Collections.singletonMap(1, value)));
+            byte[] json = jsonConverter.fromConnectData("topic", null, map);
+            JsonBuffer buffer = new JsonBuffer(16);
+            buffer.writeJson(json);
+
+            String expected = new Gson().fromJson(new String(json, StandardCharsets.UTF_8), JsonElement.class).toString();
+            assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+        }
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(200);
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                value.append((char) (0x20 + random.nextInt(0x60)));
+            } else if (kind == 6) {
+                value.append((char) random.nextInt(0x20));
+            } else if (kind == 7) {
+                value.append((char) (0x80 + random.nextInt(0x780)));
+            } else if (kind == 8) {
+                value.append((char) (0x800 + random.nextInt(0xf800)));
+            } else {
+                value.appendCodePoint(0x10000 + random.nextInt(0x100000));
+            }
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogMetricAggregatorTest {
+    private long offset;
+
+    @Test
+    public void drain_endedWindow_shouldEncodeSeriesPerTagSet() {
+        AtomicLong clock = new AtomicLong(125_000);
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.singletonList("service"), Collections.singletonList("duration"), 60_000, 0, 100, clock::get);
+
+        assertTrue(aggregator.covers("access"));
+        assertFalse(aggregator.covers("other"));
+        for (int duration = 1; duration <= 100; duration++) {
+            assertFalse(aggregator.add(record("api", duration)));
+        }
+        aggregator.add(record("web", 7));
+        aggregator.add(record(null, 7));
+
+        assertNull(aggregator.drain());
+        clock.set(180_000);
+        Map<String, JsonObject> metrics = metrics(aggregator.drain());
+
+        JsonObject count = metrics.get("logs.count [topic:access, service:api]");
+        assertEquals("count", count.get("type").getAsString());
+        assertEquals(60, count.get("interval").getAsLong());
+        assertEquals(120, point(count, 0).getAsLong());
+        assertEquals(100, point(count, 1).getAsLong());
+        assertEquals(50.5, point(metrics.get("logs.duration.avg [topic:access, service:api]"), 1).getAsDouble(), 0);
+        assertEquals(1, point(metrics.get("logs.duration.min [topic:access, service:api]"), 1).getAsDouble(), 0);
+        assertEquals(100, point(metrics.get("logs.duration.max [topic:access, service:api]"), 1).getAsDouble(), 0);
+        assertEquals(50, point(metrics.get("logs.duration.p50 [topic:access, service:api]"), 1).getAsDouble(), 0.5);
+        assertEquals(95, point(metrics.get("logs.duration.p95 [topic:access, service:api]"), 1).getAsDouble(), 0.95);
+        assertEquals(99, point(metrics.get("logs.duration.p99 [topic:access, service:api]"), 1).getAsDouble(), 0.99);
+        assertEquals(1, point(metrics.get("logs.count [topic:access, service:web]"), 1).getAsLong());
+        assertEquals(1, point(metrics.get("logs.count [topic:access]"), 1).getAsLong());
+        assertEquals(7, point(metrics.get("logs.duration.p99 [topic:access]"), 1).getAsDouble(), 0);
+
+        // The window that started with the drain is empty
+        clock.set(240_000);
+        assertNull(aggregator.drain());
+    }
+
+    @Test
+    public void add_beyondMaxSeries_shouldCountOverflow() {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.singletonList("service"), Collections.emptyList(), 60_000, 0, 2, clock::get);
+        for (String service : Arrays.asList("a", "b", "c", "d", "a", "c")) {
+            aggregator.add(record(service, 1));
+        }
+
+        Map<String, JsonObject> metrics = metrics(aggregator.flush());
+        assertEquals(3, metrics.size());
+        assertEquals(2, point(metrics.get("logs.count [topic:access, service:a]"), 1).getAsLong());
+        assertEquals(1, point(metrics.get("logs.count [topic:access, service:b]"), 1).getAsLong());
+        assertEquals(3, point(metrics.get("logs.count [aggregation:overflow]"), 1).getAsLong());
+        assertNull(aggregator.flush());
+    }
+
+    @Test
+    public void add_nonFiniteValues_shouldNotCountThem() {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.singletonList("duration"), 60_000, 0, 100, clock::get);
+        for (double duration : new double[]{Double.POSITIVE_INFINITY, 4, Double.NaN, Double.NEGATIVE_INFINITY, 2}) {
+            aggregator.add(record(null, duration));
+        }
+
+        Map<String, JsonObject> metrics = metrics(aggregator.flush());
+        assertEquals(5, point(metrics.get("logs.count [topic:access]"), 1).getAsLong());
+        assertEquals(3, point(metrics.get("logs.duration.avg [topic:access]"), 1).getAsDouble(), 0);
+        assertEquals(2, point(metrics.get("logs.duration.min [topic:access]"), 1).getAsDouble(), 0);
+        assertEquals(4, point(metrics.get("logs.duration.max [topic:access]"), 1).getAsDouble(), 0);
+    }
+
+    @Test
+    public void flush_overflowingSum_shouldSkipNonFiniteMetrics() {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.singletonList("duration"), 60_000, 0, 100, clock::get);
+        aggregator.add(record(null, Double.MAX_VALUE));
+        aggregator.add(record(null, Double.MAX_VALUE));
+
+        Map<String, JsonObject> metrics = metrics(aggregator.flush());
+        assertNull(metrics.get("logs.duration.avg [topic:access]"));
+        assertEquals(Double.MAX_VALUE, point(metrics.get("logs.duration.max [topic:access]"), 1).getAsDouble(), 0);
+    }
+
+    @Test
+    public void add_redeliveredRecords_shouldCountThemOnceAndSampleThemAlike() {
+        AtomicLong clock = new AtomicLong();
+        LogMetricAggregator aggregator = new LogMetricAggregator(Collections.singletonList("access"), "logs",
+                Collections.emptyList(), Collections.emptyList(), 60_000, 0.5, 100, clock::get);
+        List<SinkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(record(null, i));
+        }
+
+        List<Boolean> sampled = new ArrayList<>();
+        for (SinkRecord record : records) {
+            sampled.add(aggregator.add(record));
+        }
+        // The put failed and Kafka Connect delivers the records again, along with new ones
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(sampled.get(i), aggregator.add(records.get(i)));
+        }
+        aggregator.add(record(null, 100));
+        assertTrue(sampled.contains(true) && sampled.contains(false));
+        assertEquals(101, point(metrics(aggregator.flush()).get("logs.count [topic:access]"), 1).getAsLong());
+
+        // Reassigned partitions are delivered from their committed offset
+        aggregator.reset(Collections.singletonList(new TopicPartition("access", 0)));
+        aggregator.add(records.get(0));
+        assertEquals(1, point(metrics(aggregator.flush()).get("logs.count [topic:access]"), 1).getAsLong());
+    }
+
+    private SinkRecord record(String service, Number duration) {
+        Map<String, Object> value = new HashMap<>();
+        if (service != null) {
+            value.put("service", service);
+        }
+        value.put("duration", duration);
+        return new SinkRecord("access", 0, null, null, null, value, offset++);
+    }
+
+    /**
+     * @return the metrics of a payload by name and tags.
+     */
+    private static Map<String, JsonObject> metrics(byte[] payload) {
+        Map<String, JsonObject> metrics = new HashMap<>();
+        JsonArray series = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8))
+                .getAsJsonObject().getAsJsonArray("series");
+        for (JsonElement element : series) {
+            JsonObject metric = element.getAsJsonObject();
+            String[] tags = new String[metric.getAsJsonArray("tags").size()];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = metric.getAsJsonArray("tags").get(i).getAsString();
+            }
+            metrics.put(metric.get("metric").getAsString() + " " + Arrays.toString(tags), metric);
+        }
+        return metrics;
+    }
+
+    private static JsonElement point(JsonObject metric, int index) {
+        return metric.getAsJsonArray("points").get(0).getAsJsonArray().get(index);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelGzipTest {
+
+    @Test
+    public void compress_multipleBlocks_shouldProduceSingleGzipStream() throws IOException {
+        byte[] input = logLines(200_000);
+
+        byte[] compressed = ParallelGzip.compress(input, input.length, 16 * 1024);
+
+        assertArrayEquals(input, gunzip(compressed));
+        assertTrue(compressed.length < input.length / 4);
+    }
+
+    @Test
+    public void compress_partialLength_shouldOnlyCompressPrefix() throws IOException {
+        byte[] input = logLines(10_000);
+        byte[] prefix = new byte[5_000];
+        System.arraycopy(input, 0, prefix, 0, prefix.length);
+
+        assertArrayEquals(prefix, gunzip(ParallelGzip.compress(input, prefix.length, 1024)));
+    }
+
+    @Test
+    public void compress_emptyInput_shouldProduceEmptyGzipStream() throws IOException {
+        assertArrayEquals(new byte[0], gunzip(ParallelGzip.compress(new byte[0], 0, 1024)));
+    }
+
+    private byte[] logLines(int size) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(size + 100);
+        while (builder.length() < size) {
+            builder.append("{\"message\":\"request served in ").append(random.nextInt(1000))
+                    .append("ms\",\"ddsource\":\"kafka-connect\"},");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] gunzip(byte[] compressed) throws IOException {
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+}
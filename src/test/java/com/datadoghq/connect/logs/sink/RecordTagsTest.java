@@ -0,0 +1,62 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class RecordTagsTest {
+
+    @Test
+    public void field_sameTagValues_shouldReuseEncodedTags() {
+        RecordTags tags = new RecordTags("env:prod", Arrays.asList("tenant=header:tenant", "customer=key", "region=field:region"), 2);
+
+        byte[] first = tags.field(record("acme", "c1", "eu"));
+
+        assertEquals(",\"ddtags\":\"topic:someTopic,env:prod,tenant:acme,customer:c1,region:eu\"",
+                new String(first, StandardCharsets.UTF_8));
+        assertSame(first, tags.field(record("acme", "c1", "eu")));
+        assertEquals(",\"ddtags\":\"topic:someTopic,env:prod,customer:c2\"",
+                new String(tags.field(record(null, "c2", null)), StandardCharsets.UTF_8));
+
+        tags.field(record("other", "c1", "eu"));
+        assertEquals(2, tags.size());
+    }
+
+    @Test
+    public void field_valueWithComma_shouldNotSplitTag() {
+        RecordTags tags = new RecordTags(null, Collections.singletonList("customer=key"), 2);
+
+        assertEquals(",\"ddtags\":\"topic:someTopic,customer:c1_env:dev\"",
+                new String(tags.field(record(null, "c1,env:dev", null)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parse_invalidSource_shouldThrow() {
+        assertThrows(ConfigException.class, () -> RecordTags.parse(Collections.singletonList("tenant=headers:tenant")));
+        assertThrows(ConfigException.class, () -> RecordTags.parse(Collections.singletonList("=key")));
+        assertThrows(ConfigException.class, () -> RecordTags.parse(Collections.singletonList("a,b=key")));
+    }
+
+    private static SinkRecord record(String tenant, String customer, String region) {
+        ConnectHeaders headers = new ConnectHeaders();
+        if (tenant != null) {
+            headers.addString("tenant", tenant);
+        }
+        return new SinkRecord("someTopic", 0, null, customer, null,
+                region != null ? Collections.singletonMap("region", region) : "someValue", 0, null, null, headers);
+    }
+}
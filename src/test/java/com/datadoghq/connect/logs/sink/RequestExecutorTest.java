@@ -0,0 +1,42 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+public class RequestExecutorTest {
+
+    @Test
+    public void submit_withBulkRequestsSaturated_shouldSendPriorityRequest() throws IOException {
+        RequestExecutor requests = new RequestExecutor("test", 1, 1, false);
+        CountDownLatch bulkSent = new CountDownLatch(1);
+        try {
+            Future<Void> bulk = requests.submit(() -> {
+                try {
+                    bulkSent.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }, false);
+            Future<Void> priority = requests.submit(() -> { }, true);
+
+            RequestExecutor.await(priority);
+            Assert.assertFalse(bulk.isDone());
+
+            bulkSent.countDown();
+            RequestExecutor.await(bulk);
+        } finally {
+            bulkSent.countDown();
+            requests.shutdown();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs on Java 21 and above against the packaged multi-release JAR, through the {@code multi_release_jdk} profile.
+ */
+public class RequestThreadsIT {
+
+    @Test
+    public void newExecutor_withVirtualThreads_shouldRunRequestsOnVirtualThreads() throws Exception {
+        Assert.assertTrue(RequestThreads.virtualThreadsAvailable());
+
+        ExecutorService executor = RequestThreads.newExecutor("test", true);
+        try {
+            Future<Object> virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            Assert.assertEquals(Boolean.TRUE, virtual.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
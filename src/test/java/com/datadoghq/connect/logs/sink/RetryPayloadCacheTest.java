@@ -0,0 +1,85 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class RetryPayloadCacheTest {
+
+    @Test
+    public void batchKey_sameOffsetRanges_shouldBeEqual() {
+        List<SinkRecord> records = Arrays.asList(record("topic", 0, 10), record("topic", 1, 3), record("topic", 0, 11));
+        List<SinkRecord> redelivered = Arrays.asList(record("topic", 1, 3), record("topic", 0, 10), record("topic", 0, 11));
+
+        assertEquals(RetryPayloadCache.BatchKey.of(records), RetryPayloadCache.BatchKey.of(redelivered));
+        assertNotEquals(RetryPayloadCache.BatchKey.of(records),
+                RetryPayloadCache.BatchKey.of(records.subList(0, 2)));
+        assertNotEquals(RetryPayloadCache.BatchKey.of(records),
+                RetryPayloadCache.BatchKey.of(Arrays.asList(record("topic", 0, 10), record("other", 1, 3), record("topic", 0, 11))));
+    }
+
+    @Test
+    public void take_shouldRemovePayload() {
+        RetryPayloadCache cache = new RetryPayloadCache(100);
+        RetryPayloadCache.BatchKey key = key("topic", 0, 0);
+
+        cache.put(key, new byte[10]);
+
+        assertArrayEquals(new byte[10], cache.take(key));
+        assertNull(cache.take(key));
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void put_aboveMaxBytes_shouldEvictOldest() {
+        RetryPayloadCache cache = new RetryPayloadCache(100);
+        RetryPayloadCache.BatchKey first = key("topic", 0, 0);
+        RetryPayloadCache.BatchKey second = key("topic", 0, 1);
+        RetryPayloadCache.BatchKey third = key("topic", 0, 2);
+
+        cache.put(first, new byte[40]);
+        cache.put(second, new byte[40]);
+        cache.put(third, new byte[40]);
+        cache.put(key("topic", 0, 3), new byte[101]);
+
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.bytes());
+        assertNull(cache.take(first));
+    }
+
+    @Test
+    public void invalidate_shouldDropBatchesOfRevokedPartitions() {
+        RetryPayloadCache cache = new RetryPayloadCache(100);
+        cache.put(key("topic", 0, 0), new byte[10]);
+        cache.put(key("topic", 1, 0), new byte[10]);
+        cache.put(key("other", 0, 0), new byte[10]);
+
+        cache.invalidate(Collections.singleton(new TopicPartition("topic", 0)));
+
+        assertEquals(2, cache.size());
+        assertEquals(20, cache.bytes());
+        assertNull(cache.take(key("topic", 0, 0)));
+    }
+
+    private RetryPayloadCache.BatchKey key(String topic, int partition, long offset) {
+        return RetryPayloadCache.BatchKey.of(Collections.singletonList(record(topic, partition, offset)));
+    }
+
+    private SinkRecord record(String topic, int partition, long offset) {
+        return new SinkRecord(topic, partition, null, null, null, "value", offset);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.json.JsonConverter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class SchemaEncoderCacheTest {
+    private JsonConverter jsonConverter;
+
+    @Before
+    public void setUp() {
+        jsonConverter = new JsonConverter();
+        Map<String, String> jsonConverterConfig = new HashMap<>();
+        jsonConverterConfig.put("schemas.enable", "false");
+        jsonConverterConfig.put("decimal.format", "NUMERIC");
+        jsonConverter.configure(jsonConverterConfig, false);
+    }
+
+    @Test
+    public void encode_struct_matchesJsonConverter() {
+        Schema nested = SchemaBuilder.struct()
+                .field("id", Schema.INT64_SCHEMA)
+                .field("note", Schema.OPTIONAL_STRING_SCHEMA)
+                .build();
+        Schema schema = SchemaBuilder.struct()
+                .field("int8", Schema.INT8_SCHEMA)
+                .field("int16", Schema.INT16_SCHEMA)
+                .field("int32", Schema.INT32_SCHEMA)
+                .field("int64", Schema.INT64_SCHEMA)
+                .field("float32", Schema.FLOAT32_SCHEMA)
+                .field("float64", Schema.FLOAT64_SCHEMA)
+                .field("nan", Schema.FLOAT64_SCHEMA)
+                .field("bool", Schema.BOOLEAN_SCHEMA)
+                .field("string", Schema.STRING_SCHEMA)
+                .field("bytes", Schema.BYTES_SCHEMA)
+                .field("buffer", Schema.BYTES_SCHEMA)
+                .field("decimal", Decimal.schema(2))
+                .field("bigDecimal", Decimal.schema(-20))
+                .field("date", Date.SCHEMA)
+                .field("time", Time.SCHEMA)
+                .field("timestamp", Timestamp.SCHEMA)
+                .field("array", SchemaBuilder.array(Schema.OPTIONAL_INT32_SCHEMA).build())
+                .field("stringMap", SchemaBuilder.map(Schema.STRING_SCHEMA, Schema.INT32_SCHEMA).build())
+                .field("intMap", SchemaBuilder.map(Schema.INT32_SCHEMA, Schema.STRING_SCHEMA).build())
+                .field("nested", nested)
+                .field("optional", Schema.OPTIONAL_STRING_SCHEMA)
+                .field("defaulted", SchemaBuilder.string().defaultValue("fallback").build())
+                .field("quoted \"name\"", Schema.STRING_SCHEMA)
+                .build();
+
+        Map<String, Integer> stringMap = new LinkedHashMap<>();
+        stringMap.put("a", 1);
+        stringMap.put("b\n", 2);
+        Map<Integer, String> intMap = new LinkedHashMap<>();
+        intMap.put(1, "one");
+        intMap.put(2, "two");
+
+        Struct value = new Struct(schema)
+                .put("int8", (byte) -8)
+                .put("int16", (short) 16)
+                .put("int32", Integer.MIN_VALUE)
+                .put("int64", Long.MAX_VALUE)
+                .put("float32", 1.5e10f)
+                .put("float64", 0.1)
+                .put("nan", Double.NaN)
+                .put("bool", true)
+                .put("string", "tab\t \"quote\" back\\slash \u0001 \u2028 \u00e9 \u65e5\u672c \ud83d\ude00")
+                .put("bytes", new byte[]{1, 2, 3, (byte) 0xff})
+                .put("buffer", ByteBuffer.wrap("buffer".getBytes(StandardCharsets.UTF_8)))
+                .put("decimal", new BigDecimal(new BigInteger("-156"), 2))
+                .put("bigDecimal", new BigDecimal(new BigInteger("42"), -20))
+                .put("date", new java.util.Date(86400000L * 18000))
+                .put("time", new java.util.Date(3723000L))
+                .put("timestamp", new java.util.Date(1713974401224L))
+                .put("array", Arrays.asList(1, null, 3))
+                .put("stringMap", stringMap)
+                .put("intMap", intMap)
+                .put("nested", new Struct(nested).put("id", 7L))
+                .put("quoted \"name\"", "x");
+
+        assertEquals(convertWithJsonConverter(schema, value), encode(new SchemaEncoderCache(16), schema, value));
+    }
+
+    @Test
+    public void encode_primitiveSchema_matchesJsonConverter() {
+        assertEquals(convertWithJsonConverter(Schema.STRING_SCHEMA, "someValue"),
+                encode(new SchemaEncoderCache(16), Schema.STRING_SCHEMA, "someValue"));
+        assertEquals(convertWithJsonConverter(Decimal.schema(2), new BigDecimal("1.56")),
+                encode(new SchemaEncoderCache(16), Decimal.schema(2), new BigDecimal("1.56")));
+    }
+
+    @Test
+    public void encode_withFieldFilter_shouldProjectAndRedact() {
+        Schema user = SchemaBuilder.struct()
+                .field("name", Schema.STRING_SCHEMA)
+                .field("password", Schema.STRING_SCHEMA)
+                .build();
+        Schema schema = SchemaBuilder.struct()
+                .field("id", Schema.INT64_SCHEMA)
+                .field("payload", Schema.BYTES_SCHEMA)
+                .field("user", user)
+                .field("labels", SchemaBuilder.map(Schema.STRING_SCHEMA, Schema.STRING_SCHEMA).build())
+                .field("note", Schema.STRING_SCHEMA)
+                .build();
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("env", "production");
+        labels.put("owner", "someone");
+        Struct value = new Struct(schema)
+                .put("id", 42L)
+                .put("payload", new byte[1024])
+                .put("user", new Struct(user).put("name", "card 1234-5678").put("password", "secret"))
+                .put("labels", labels)
+                .put("note", "dropped");
+
+        FieldFilter filter = new FieldFilter(Arrays.asList("id", "user", "labels.env"), Arrays.asList("user.password"),
+                10, Pattern.compile("\\d{4}"), "$x");
+
+        assertEquals("{\"id\":42,\"user\":{\"name\":\"card $x-$x\"},\"labels\":{\"env\":\"production\"}}",
+                encode(new SchemaEncoderCache(16, filter), schema, value));
+    }
+
+    @Test
+    public void encodeSchemaless_withFieldFilter_shouldProjectAndRedact() {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("name", "someone");
+        user.put("token", "abcdef");
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("level", "info");
+        value.put("count", 3);
+        value.put("user", user);
+        value.put("items", Arrays.asList("one", 2.5));
+
+        FieldFilter filter = new FieldFilter(Collections.emptyList(), Arrays.asList("user.token"), 3, null, null);
+        JsonBuffer buffer = new JsonBuffer();
+        SchemaEncoder.encodeSchemaless(value, filter, "", buffer, element -> jsonConverter.fromConnectData("topic", null, element));
+
+        assertEquals("{\"level\":\"inf\",\"count\":3,\"user\":{\"name\":\"som\"},\"items\":[\"one\",2.5]}",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void encode_missingRequiredField_shouldThrowDataException() {
+        Schema schema = SchemaBuilder.struct().field("required", Schema.STRING_SCHEMA).build();
+        SchemaEncoderCache cache = new SchemaEncoderCache(16);
+
+        assertThrows(DataException.class, () -> encode(cache, schema, new Struct(schema)));
+    }
+
+    @Test
+    public void get_sameSchemaInstance_shouldReuseEncoder() {
+        Schema schema = SchemaBuilder.struct().field("field", Schema.STRING_SCHEMA).build();
+        Schema other = SchemaBuilder.struct().field("other", Schema.STRING_SCHEMA).build();
+        SchemaEncoderCache cache = new SchemaEncoderCache(16);
+
+        SchemaEncoder encoder = cache.get(schema);
+        cache.get(other);
+
+        assertSame(encoder, cache.get(schema));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void get_equalSchemaInstances_shouldReuseEncoder() {
+        SchemaEncoderCache cache = new SchemaEncoderCache(16);
+
+        SchemaEncoder encoder = cache.get(SchemaBuilder.struct().field("field", Schema.STRING_SCHEMA).build());
+
+        assertSame(encoder, cache.get(SchemaBuilder.struct().field("field", Schema.STRING_SCHEMA).build()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_moreSchemasThanMaxSize_shouldEvictLeastRecentlyUsed() {
+        SchemaEncoderCache cache = new SchemaEncoderCache(2);
+        Schema first = SchemaBuilder.struct().field("first", Schema.STRING_SCHEMA).build();
+        Schema second = SchemaBuilder.struct().field("second", Schema.STRING_SCHEMA).build();
+        Schema third = SchemaBuilder.struct().field("third", Schema.STRING_SCHEMA).build();
+
+        SchemaEncoder firstEncoder = cache.get(first);
+        SchemaEncoder secondEncoder = cache.get(second);
+        cache.get(third);
+
+        assertEquals(2, cache.size());
+        assertSame(secondEncoder, cache.get(second));
+        assertNotSame(firstEncoder, cache.get(first));
+    }
+
+    private String encode(SchemaEncoderCache cache, Schema schema, Object value) {
+        JsonBuffer buffer = new JsonBuffer();
+        cache.get(schema).encode(value, buffer);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String convertWithJsonConverter(Schema schema, Object value) {
+        byte[] json = jsonConverter.fromConnectData("topic", schema, value);
+        return new Gson().fromJson(new String(json, StandardCharsets.UTF_8), JsonElement.class).toString();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+Unless explicitly stated otherwise all files in this repository are licensed under the Apache-2.0 License.
+This product includes software developed at Datadog (https://www.datadoghq.com/). Copyright 2020 Datadog, Inc.
+ */
+
+package com.datadoghq.connect.logs.sink;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedSenderRuntimeTest {
+
+    @Test
+    public void acquire_sameConnector_shouldShareRuntimeUntilLastRelease() {
+        SharedSenderRuntime first = SharedSenderRuntime.acquire("connector", 2);
+        SharedSenderRuntime second = SharedSenderRuntime.acquire("connector", 2);
+        SharedSenderRuntime other = SharedSenderRuntime.acquire("other", 2);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, first.references());
+
+        first.release();
+        assertFalse(first.compressionExecutor().isShutdown());
+        second.release();
+        other.release();
+
+        assertTrue(first.compressionExecutor().isShutdown());
+        SharedSenderRuntime restarted = SharedSenderRuntime.acquire("connector", 2);
+        assertNotSame(first, restarted);
+        restarted.release();
+    }
+
+    @Test
+    public void beginRequest_atLimit_shouldWaitForEndRequest() throws Exception {
+        SharedSenderRuntime runtime = SharedSenderRuntime.acquire("limited", 1);
+        try {
+            runtime.beginRequest();
+
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicBoolean sent = new AtomicBoolean();
+            Thread other = new Thread(() -> {
+                started.countDown();
+                try {
+                    runtime.beginRequest();
+                    sent.set(true);
+                    runtime.endRequest();
+                } catch (IOException ignored) {
+                }
+            });
+            other.start();
+            started.await();
+            other.join(200);
+            assertFalse(sent.get());
+
+            runtime.endRequest();
+            other.join(TimeUnit.SECONDS.toMillis(10));
+            assertTrue(sent.get());
+        } finally {
+            runtime.release();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -23,8 +24,10 @@ import java.util.zip.GZIPInputStream;
 public class RestHelper extends HttpServlet {
 
     private Server server;
-    private final List<RequestInfo> capturedRequests = new ArrayList<RequestInfo>();
+    private final List<RequestInfo> capturedRequests = Collections.synchronizedList(new ArrayList<RequestInfo>());
     private int statusCode = HttpServletResponse.SC_OK;
+    private String rejectedContent;
+    private String failedContent;
 
     public void start() throws Exception {
         server = new Server();
@@ -32,6 +35,7 @@ public class RestHelper extends HttpServlet {
         ServletContextHandler handler = new ServletContextHandler();
         ServletHolder testServ = new ServletHolder("test", this);
         handler.addServlet(testServ,"/api/v2/logs");
+        handler.addServlet(testServ,"/api/v1/series");
 
         server.setHandler(handler);
         connector.setPort(8080);
@@ -48,11 +52,32 @@ public class RestHelper extends HttpServlet {
         this.statusCode = statusCode;
     }
 
+    /**
+     * Makes requests whose body contains the given content fail with HTTP 400.
+     */
+    public void setRejectedContent(String rejectedContent) {
+        this.rejectedContent = rejectedContent;
+    }
+
+    /**
+     * Makes requests whose body contains the given content fail with HTTP 503.
+     */
+    public void setFailedContent(String failedContent) {
+        this.failedContent = failedContent;
+    }
+
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        capturedRequests.add(getRequestInfo(request));
+        RequestInfo requestInfo = getRequestInfo(request);
+        capturedRequests.add(requestInfo);
 
         response.setContentType("application/json");
-        response.setStatus(statusCode);
+        if (rejectedContent != null && requestInfo.getBody().contains(rejectedContent)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } else if (failedContent != null && requestInfo.getBody().contains(failedContent)) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } else {
+            response.setStatus(statusCode);
+        }
     }
 
     private RequestInfo getRequestInfo(HttpServletRequest request) throws IOException {